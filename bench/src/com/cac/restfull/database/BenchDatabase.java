@@ -0,0 +1,130 @@
+package com.cac.restfull.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * Base de datos H2 en memoria usada por los benchmarks en lugar de Oracle.
+ *
+ * La tabla BENCH_ORDEN tiene la llave ID y columnas C1..Cn que alternan los
+ * tipos usados por las tablas de ordenes de trabajo: NUMBER, VARCHAR2, DATE
+ * y NUMBER con decimales.
+ *
+ * @author atorres
+ */
+final class BenchDatabase {
+
+    static final String TABLE = "BENCH_ORDEN";
+
+    private static final String[] SQL_TYPES = {"INTEGER", "VARCHAR(40)", "TIMESTAMP", "DECIMAL(12,2)"};
+    private static final String[] FIELD_TYPES = {"INTEGER", "STRING", "DATE", "FLOAT"};
+
+    private BenchDatabase() {
+    }
+
+    /**
+     * Metodo utilizado para crear una base de datos con la tabla llena y el
+     * pool de conexiones hacia ella.
+     *
+     * @param name nombre de la base de datos en memoria.
+     * @param rows registros a insertar.
+     * @param columns columnas ademas de la llave.
+     */
+    static DBConnectionPool create(String name, int rows, int columns) throws Exception {
+        Class.forName("org.h2.Driver");
+        DBConnectionPool pool = new DBConnectionPool("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        Connection con = pool.borrow();
+        try {
+            Statement st = con.createStatement();
+            st.execute("DROP TABLE IF EXISTS " + TABLE);
+            StringBuilder ddl = new StringBuilder("CREATE TABLE ").append(TABLE).append(" (ID INTEGER PRIMARY KEY");
+            for (int j = 0; j < columns; j++) {
+                ddl.append(", C").append(j + 1).append(' ').append(SQL_TYPES[j % SQL_TYPES.length]);
+            }
+            st.execute(ddl.append(')').toString());
+            st.close();
+
+            if (rows > 0) {
+                PreparedStatement ps = con.prepareStatement(
+                        DBServiceManager.getInstance().getSqlTemplates().get(() -> insertSql(columns), "bench", columns));
+                for (int i = 0; i < rows; i++) {
+                    ps.setInt(1, i);
+                    for (int j = 0; j < columns; j++) {
+                        setValue(ps, j + 2, j, i);
+                    }
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                ps.close();
+            }
+        } finally {
+            con.close();
+        }
+        return pool;
+    }
+
+    static String[] columnNames(int columns) {
+        String[] names = new String[columns + 1];
+        names[0] = "ID";
+        for (int j = 0; j < columns; j++) {
+            names[j + 1] = "C" + (j + 1);
+        }
+        return names;
+    }
+
+    /**
+     * @return tipo, segun el formato de insertDataIntoTable, de la columna
+     * Cj (desde 0).
+     */
+    static String fieldType(int column) {
+        return FIELD_TYPES[column % FIELD_TYPES.length];
+    }
+
+    /**
+     * @return valor de ejemplo en texto, segun el formato de
+     * insertDataIntoTable, para la columna Cj (desde 0).
+     */
+    static String fieldValue(int column, int row) {
+        switch (column % FIELD_TYPES.length) {
+            case 0:
+                return String.valueOf(row * 7 + column);
+            case 1:
+                return "Descripcion " + row + "-" + column;
+            case 2:
+                return String.valueOf(1451865600000L + row * 60000L);
+            default:
+                return (row % 1000) + ".25";
+        }
+    }
+
+    static String insertSql(int columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(TABLE).append(" (ID");
+        StringBuilder values = new StringBuilder("?");
+        for (int j = 0; j < columns; j++) {
+            sql.append(", C").append(j + 1);
+            values.append(",?");
+        }
+        return sql.append(") VALUES (").append(values).append(')').toString();
+    }
+
+    private static void setValue(PreparedStatement ps, int index, int column, int row) throws SQLException {
+        String value = fieldValue(column, row);
+        switch (column % FIELD_TYPES.length) {
+            case 0:
+                ps.setInt(index, Integer.parseInt(value));
+                break;
+            case 1:
+                ps.setString(index, value);
+                break;
+            case 2:
+                ps.setTimestamp(index, new Timestamp(Long.parseLong(value)));
+                break;
+            default:
+                ps.setBigDecimal(index, new java.math.BigDecimal(value));
+                break;
+        }
+    }
+}
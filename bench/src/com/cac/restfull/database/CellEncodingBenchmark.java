@@ -0,0 +1,118 @@
+package com.cac.restfull.database;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Costo por celda de la lectura y escritura de los registros, en ns por
+ * valor (ROWS x COLUMNS valores por invocacion, incluye la consulta):
+ * <ul>
+ * <li>byLabel: lectura por nombre de columna y escritura con JsonGenerator,
+ * como se hacia antes del {@link RowPlan}.</li>
+ * <li>plan: lectura por posicion con el plan compilado y llaves ya
+ * codificadas, como lo hace {@link TableResultStream}.</li>
+ * </ul>
+ *
+ * @author atorres
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CellEncodingBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final int COLUMNS = 16;
+
+    private DBConnectionPool pool;
+    private String[] columns;
+    private String sql;
+    private RowPlan.Cache plans;
+    private ByteArrayOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        pool = BenchDatabase.create("cells", ROWS, COLUMNS);
+        columns = BenchDatabase.columnNames(COLUMNS);
+        sql = DBServiceManager.getInstance().createSelectSql(new SelectRequest(BenchDatabase.TABLE,
+                columns, null, null, null, 0, null, 500));
+        plans = new RowPlan.Cache(16);
+        out = new ByteArrayOutputStream(1 << 20);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS * COLUMNS)
+    public int byLabel() throws Exception {
+        out.reset();
+        Connection con = pool.borrow();
+        PreparedStatement ps = con.prepareStatement(sql);
+        try {
+            ResultSet rs = ps.executeQuery();
+            JsonGenerator generator = Json.createGenerator(out);
+            generator.writeStartArray();
+            while (rs.next()) {
+                generator.writeStartObject();
+                for (int j = 0; j < columns.length; j++) {
+                    if (columns[j].contains("fecha")) {
+                        generator.write(columns[j], rs.getDate(columns[j]).getTime());
+                    } else {
+                        String value = rs.getString(columns[j]);
+                        generator.write(columns[j], value == null ? " " : value);
+                    }
+                }
+                generator.writeEnd();
+            }
+            generator.writeEnd();
+            generator.flush();
+        } finally {
+            DBConnection.close(ps, con);
+        }
+        return out.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS * COLUMNS)
+    public int plan() throws Exception {
+        out.reset();
+        Connection con = pool.borrow();
+        PreparedStatement ps = con.prepareStatement(sql);
+        try {
+            ResultSet rs = ps.executeQuery();
+            RowPlan plan = plans.get(sql, columns, rs);
+            RowEncoder encoder = RowEncoder.create(ResponseFormat.JSON, out);
+            encoder.start(BenchDatabase.TABLE, plan);
+            while (rs.next()) {
+                plan.writeRow(rs, encoder);
+            }
+            encoder.end(false, null);
+        } finally {
+            DBConnection.close(ps, con);
+        }
+        return out.size();
+    }
+}
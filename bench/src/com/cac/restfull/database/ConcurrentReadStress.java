@@ -0,0 +1,174 @@
+package com.cac.restfull.database;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.json.Json;
+import com.cac.restfull.webservice.AppConstant;
+
+/**
+ * Prueba de concurrencia de las lecturas: ejecuta getDataFromTable desde N
+ * hilos a la vez, con N creciendo hasta el tamano del pool, y reporta por
+ * cada N las lecturas por segundo y la eficiencia respecto a un hilo
+ * (lecturas de N hilos / (N * lecturas de 1 hilo)). Comprueba que el
+ * {@link DBServiceManager} no serializa las peticiones.
+ *
+ * La base es H2 en memoria ({@link BenchDatabase}); el primer registro de
+ * cada lectura espera en la funcion ESPERAR para simular la latencia de
+ * Oracle, de modo que el hilo queda bloqueado sin ocupar el procesador, como
+ * con la red.
+ * Termina con error si la eficiencia con el pool completo es menor a
+ * stress.minEfficiency.
+ *
+ * Se configura con propiedades del sistema (ver build.xml, target
+ * stress-test): stress.threads (por defecto 1,2,4,8,16 y el tamano del
+ * pool), stress.warmupSeconds, stress.seconds, stress.latencyMs (latencia de cada lectura),
+ * stress.rows (registros por lectura) y stress.minEfficiency.
+ *
+ * @author atorres
+ */
+public class ConcurrentReadStress {
+
+    private static final String URL = "jdbc:h2:mem:stress;DB_CLOSE_DELAY=-1";
+    private static final int TABLE_ROWS = 100000;
+    private static final int COLUMNS = 8;
+
+    private final int seconds;
+    private final int rows;
+    private final String[] columns = BenchDatabase.columnNames(COLUMNS);
+
+    ConcurrentReadStress(int seconds, int rows) {
+        this.seconds = seconds;
+        this.rows = rows;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Antes de cargar AppConstant, para que el pool apunte a la base H2.
+        System.setProperty("cac.db.driver", "org.h2.Driver");
+        System.setProperty("cac.db.url", URL);
+        System.setProperty("cac.db.user", "sa");
+        System.setProperty("cac.db.password", "");
+        System.setProperty("cac.log.sampleRates", "sql:0,rows:0");
+        System.setProperty("cac.coalesce.maxBytes", "0");
+
+        int warmupSeconds = Integer.getInteger("stress.warmupSeconds", 3);
+        int seconds = Integer.getInteger("stress.seconds", 5);
+        int rows = Integer.getInteger("stress.rows", 20);
+        long latencyNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("stress.latencyMs", 5L));
+        double minEfficiency = Double.parseDouble(System.getProperty("stress.minEfficiency", "0.7"));
+
+        DBConnectionPool setup = BenchDatabase.create("stress", TABLE_ROWS, COLUMNS);
+        Connection con = setup.borrow();
+        try {
+            Statement st = con.createStatement();
+            st.execute("CREATE ALIAS IF NOT EXISTS ESPERAR FOR \""
+                    + ConcurrentReadStress.class.getName() + ".esperar\"");
+            st.close();
+        } finally {
+            con.close();
+            setup.shutdown();
+        }
+
+        int poolSize = AppConstant.POOL_MAX_SIZE;
+        TreeSet<Integer> counts = new TreeSet<>();
+        String threadList = System.getProperty("stress.threads", "");
+        if (threadList.trim().isEmpty()) {
+            threadList = "1,2,4,8,16," + poolSize;
+        }
+        for (String item : threadList.split(",")) {
+            int threads = Integer.parseInt(item.trim());
+            if (threads > 0 && threads <= poolSize) {
+                counts.add(threads);
+            }
+        }
+        counts.add(1);
+
+        ConcurrentReadStress stress = new ConcurrentReadStress(seconds, rows);
+        double efficiency = 0;
+        try {
+            stress.run(counts.last(), warmupSeconds, latencyNanos);
+            System.out.println("Pool: " + poolSize + ", latencia por lectura: "
+                    + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + " ms, registros por lectura: " + rows);
+            System.out.println(String.format(Locale.US, "%6s %10s %10s %10s %10s",
+                    "hilos", "lecturas", "lect/s", "speedup", "eficiencia"));
+            double base = 0;
+            for (int threads : counts) {
+                long reads = stress.run(threads, seconds, latencyNanos);
+                double throughput = reads / (double) seconds;
+                if (threads == 1) {
+                    base = throughput;
+                }
+                double speedup = base == 0 ? 0 : throughput / base;
+                efficiency = speedup / threads;
+                System.out.println(String.format(Locale.US, "%6d %10d %10.1f %10.2f %9.0f%%",
+                        threads, reads, throughput, speedup, efficiency * 100));
+            }
+        } finally {
+            DBConnection.shutdown();
+        }
+        if (efficiency < minEfficiency) {
+            System.out.println(String.format(Locale.US, "Eficiencia con %d hilos menor a %.0f%%",
+                    counts.last(), minEfficiency * 100));
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Funcion ESPERAR de la base H2: bloquea el hilo el tiempo indicado.
+     */
+    public static int esperar(long nanos) {
+        LockSupport.parkNanos(nanos);
+        return 1;
+    }
+
+    /**
+     * Metodo utilizado para leer desde varios hilos durante el tiempo
+     * indicado, cada lectura con un rango distinto de la tabla.
+     *
+     * @return lecturas completas.
+     */
+    long run(int threads, int duration, long latencyNanos) throws Exception {
+        AtomicLong reads = new AtomicLong();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(duration);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+                    while (System.nanoTime() < deadline) {
+                        int first = random.nextInt(TABLE_ROWS - rows);
+                        SelectRequest request = new SelectRequest(BenchDatabase.TABLE, columns,
+                                "ID >= ? and ID < ? and (ID <> ? or ESPERAR(?) = 1)",
+                                Json.createArrayBuilder().add(first).add(first + rows).add(first)
+                                        .add(latencyNanos).build(),
+                                null, 0, null, rows);
+                        out.reset();
+                        DBServiceManager.getInstance().getDataFromTable(request).write(out);
+                        reads.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return reads.get();
+    }
+}
@@ -0,0 +1,105 @@
+package com.cac.restfull.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Preparacion de los inserts de insertDataIntoTable: la conversion de los
+ * tipos recibidos con getFiledTypeFromString y el seteo de los
+ * {@link DBServiceManager.WrapperValues} en el statement. No se ejecuta el
+ * lote, solo se mide el trabajo del lado del servicio.
+ *
+ * @author atorres
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertBindingBenchmark {
+
+    @Param({"1", "500"})
+    int rows;
+
+    @Param({"4", "16", "64"})
+    int columns;
+
+    private DBConnectionPool pool;
+    private Connection con;
+    private PreparedStatement ps;
+    private String[] typeNames;
+    private List<List<DBServiceManager.WrapperValues>> values;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        pool = BenchDatabase.create("bind", 0, columns);
+        con = pool.borrow();
+        ps = con.prepareStatement(BenchDatabase.insertSql(columns));
+
+        typeNames = new String[columns];
+        for (int j = 0; j < columns; j++) {
+            typeNames[j] = BenchDatabase.fieldType(j).toLowerCase();
+        }
+
+        values = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            List<DBServiceManager.WrapperValues> row = new ArrayList<>();
+            row.add(new DBServiceManager.WrapperValues(1, String.valueOf(i), DBServiceManager.FieldType.INTEGER));
+            for (int j = 0; j < columns; j++) {
+                row.add(new DBServiceManager.WrapperValues(j + 2, BenchDatabase.fieldValue(j, i),
+                        DBServiceManager.getFiledTypeFromString(typeNames[j])));
+            }
+            values.add(row);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        ps.close();
+        con.close();
+        pool.shutdown();
+    }
+
+    /**
+     * @return cantidad de tipos convertidos por registro de la peticion.
+     */
+    @Benchmark
+    public int fieldTypes() throws Exception {
+        int count = 0;
+        for (int i = 0; i < rows; i++) {
+            for (String typeName : typeNames) {
+                if (DBServiceManager.getFiledTypeFromString(typeName) != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int bindBatch() throws Exception {
+        for (List<DBServiceManager.WrapperValues> row : values) {
+            InsertBatchWriter.bindValues(ps, row);
+            ps.addBatch();
+        }
+        ps.clearBatch();
+        return values.size();
+    }
+}
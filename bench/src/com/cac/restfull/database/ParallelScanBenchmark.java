@@ -0,0 +1,69 @@
+package com.cac.restfull.database;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tiempo de exportar una tabla completa con getDataFromTable segun la
+ * cantidad de rangos leidos en paralelo ({@link ParallelScan}); con 1 se lee
+ * en serie. La base de datos se configura en el fork con las propiedades
+ * cac.db.*, para que las lecturas usen el pool de {@link DBConnection}.
+ *
+ * @author atorres
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dcac.db.url=jdbc:h2:mem:scan;DB_CLOSE_DELAY=-1",
+    "-Dcac.db.user=sa", "-Dcac.db.password=", "-Dcac.log.sampleRates=sql:0,rows:0"})
+public class ParallelScanBenchmark {
+
+    private static final int ROWS = 200000;
+    private static final int COLUMNS = 8;
+
+    @Param({"1", "2", "4"})
+    int parallel;
+
+    private DBConnectionPool pool;
+    private SelectRequest request;
+    private ByteArrayOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        pool = BenchDatabase.create("scan", ROWS, COLUMNS);
+        request = new SelectRequest(BenchDatabase.TABLE, BenchDatabase.columnNames(COLUMNS),
+                null, null, null, 0, null, 500).parallel(parallel, "ID", false);
+        out = new ByteArrayOutputStream(64 << 20);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+        DBConnection.shutdown();
+    }
+
+    /**
+     * @return bytes escritos, para que el resultado no se descarte.
+     */
+    @Benchmark
+    public int export() throws Exception {
+        out.reset();
+        DBServiceManager.getInstance().getDataFromTable(request).write(out);
+        return out.size();
+    }
+}
@@ -0,0 +1,80 @@
+package com.cac.restfull.database;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Codificacion de un ResultSet tal como lo hace getDataFromTable: ejecuta el
+ * select y escribe la respuesta con {@link TableResultStream} en cada
+ * {@link ResponseFormat}.
+ *
+ * @author atorres
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowEncodingBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int rows;
+
+    @Param({"4", "16", "64"})
+    int columns;
+
+    @Param({"JSON", "COMPACT", "CBOR"})
+    ResponseFormat format;
+
+    private DBConnectionPool pool;
+    private SelectRequest request;
+    private String sql;
+    private RowPlan.Cache plans;
+    private ByteArrayOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        pool = BenchDatabase.create("encode", rows, columns);
+        request = new SelectRequest(BenchDatabase.TABLE, BenchDatabase.columnNames(columns),
+                null, null, null, 0, null, 500, format);
+        sql = DBServiceManager.getInstance().createSelectSql(request);
+        plans = new RowPlan.Cache(16);
+        out = new ByteArrayOutputStream(1 << 20);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * @return bytes escritos, para que el resultado no se descarte.
+     */
+    @Benchmark
+    public int encode() throws Exception {
+        out.reset();
+        Connection con = pool.borrow();
+        PreparedStatement ps = con.prepareStatement(sql);
+        ps.setFetchSize(request.getFetchSize());
+        ResultSet rs = ps.executeQuery();
+        new TableResultStream(request, sql, plans, con, ps, rs).write(out);
+        return out.size();
+    }
+}
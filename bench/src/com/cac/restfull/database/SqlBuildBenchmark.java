@@ -0,0 +1,75 @@
+package com.cac.restfull.database;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formacion del SQL de getDataFromTable: la lista de columnas, el select
+ * completo (con y sin paginacion) y la busqueda en el {@link SqlTemplateCache}.
+ *
+ * @author atorres
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlBuildBenchmark {
+
+    @Param({"4", "16", "64"})
+    int columns;
+
+    private DBServiceManager manager;
+    private SqlTemplateCache templates;
+    private String[] names;
+    private SelectRequest request;
+    private SelectRequest paged;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        manager = DBServiceManager.getInstance();
+        templates = new SqlTemplateCache(256);
+        names = BenchDatabase.columnNames(columns);
+        request = new SelectRequest(BenchDatabase.TABLE, names, "C1 = ? and C2 = ?", null,
+                null, 0, null, 500);
+        paged = new SelectRequest(BenchDatabase.TABLE, names, "C1 = ?", null,
+                new String[]{"ID"}, 100, "cursor", 500);
+    }
+
+    @Benchmark
+    public String formatColumns() {
+        return DBServiceManager.formatColumns(names);
+    }
+
+    @Benchmark
+    public String createSelectSql() {
+        return manager.createSelectSql(request);
+    }
+
+    @Benchmark
+    public String createPagedSelectSql() {
+        return manager.createSelectSql(paged);
+    }
+
+    /**
+     * Camino de cada peticion repetida: solo se forma la llave y se busca.
+     */
+    @Benchmark
+    public String templateCacheHit() {
+        return templates.get(() -> manager.createSelectSql(request), "select",
+                request.getTableName(), request.getColumns(), request.getWhereCondition(),
+                request.getOrderBy(), request.getAfter() != null, request.isPaged());
+    }
+}
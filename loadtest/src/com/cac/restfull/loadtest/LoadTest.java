@@ -0,0 +1,268 @@
+package com.cac.restfull.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.json.Json;
+import javax.json.JsonReader;
+import com.cac.restfull.database.LatencyHistogram;
+
+/**
+ * Prueba de carga de punta a punta. Inicia la aplicacion en un Jetty
+ * embebido contra una base H2 en memoria ({@link LoadTestDatabase}) y envia
+ * peticiones desde varios hilos a getDataFromTable, insertDataIntoTable e
+ * insertOrdenTrabajo, reportando por escenario el rendimiento, los
+ * percentiles de latencia y la tasa de errores.
+ *
+ * Se configura con propiedades del sistema (ver build.xml, target
+ * load-test):
+ * <ul>
+ * <li>load.url: servidor ya iniciado; si se indica no se inicia Jetty ni la
+ * base en memoria.</li>
+ * <li>load.webDir: aplicacion compilada, por defecto build/web.</li>
+ * <li>load.scenarios: escenarios separados por coma, por defecto
+ * read,insert,orden. El escenario shared repite la misma lectura desde
+ * todos los hilos y al terminar muestra las lecturas agrupadas del
+ * servidor.</li>
+ * <li>load.threads, load.warmupSeconds, load.seconds: hilos cliente y
+ * duracion de cada escenario.</li>
+ * <li>load.ordenes, load.detalle, load.insertRows: ordenes iniciales,
+ * lineas de detalle por orden y registros por insert.</li>
+ * <li>load.sharedLatencyMs: espera de la lectura del escenario shared antes
+ * de su primer registro.</li>
+ * </ul>
+ *
+ * @author atorres
+ */
+public class LoadTest {
+
+    private final String url;
+    private final int threads;
+    private final int warmupSeconds;
+    private final int seconds;
+    private final int ordenes;
+    private final int detalle;
+    private final int insertRows;
+    private final long sharedLatencyMs;
+
+    public LoadTest(String url, int threads, int warmupSeconds, int seconds, int ordenes,
+            int detalle, int insertRows, long sharedLatencyMs) {
+        this.url = url;
+        this.threads = threads;
+        this.warmupSeconds = warmupSeconds;
+        this.seconds = seconds;
+        this.ordenes = ordenes;
+        this.detalle = detalle;
+        this.insertRows = insertRows;
+        this.sharedLatencyMs = sharedLatencyMs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty("load.url", "");
+        int ordenes = Integer.getInteger("load.ordenes", 5000);
+        int detalle = Integer.getInteger("load.detalle", 5);
+
+        LoadTestServer server = null;
+        if (url.isEmpty()) {
+            LoadTestDatabase.configure();
+            LoadTestDatabase.create(ordenes, detalle);
+            server = new LoadTestServer(System.getProperty("load.webDir", "build/web"),
+                    Integer.getInteger("load.port", 0));
+            server.start();
+            url = server.getUrl();
+        }
+
+        int failed = 0;
+        try {
+            LoadTest test = new LoadTest(url, Integer.getInteger("load.threads", 16),
+                    Integer.getInteger("load.warmupSeconds", 5), Integer.getInteger("load.seconds", 30),
+                    ordenes, detalle, Integer.getInteger("load.insertRows", 10),
+                    Long.getLong("load.sharedLatencyMs", 500L));
+            System.out.println("Servidor: " + url + ", hilos: " + test.threads);
+            System.out.println(String.format(Locale.US, "%-8s %10s %8s %8s %10s %9s %9s %9s %9s",
+                    "escenario", "peticiones", "errores", "%error", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+            for (String name : System.getProperty("load.scenarios", "read,insert,orden").split(",")) {
+                Scenario scenario = Scenario.valueOf(name.trim().toUpperCase(Locale.US));
+                test.run(scenario, test.warmupSeconds);
+                Result result = test.run(scenario, test.seconds);
+                System.out.println(result.format(scenario));
+                if (scenario == Scenario.SHARED) {
+                    System.out.println("lecturas agrupadas: " + test.getMetrics("coalescing")
+                            + ", ejecutor: " + test.getMetrics("executor"));
+                }
+                if (result.errors.get() > 0) {
+                    failed++;
+                }
+            }
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * Metodo utilizado para enviar peticiones del escenario desde todos los
+     * hilos durante el tiempo indicado.
+     */
+    Result run(Scenario scenario, int duration) throws Exception {
+        Result result = new Result();
+        if (duration <= 0) {
+            return result;
+        }
+        long deadline = System.nanoTime() + duration * 1000000000L;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        send(scenario, random, result);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            result.elapsedNanos = System.nanoTime() - start;
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private void send(Scenario scenario, ThreadLocalRandom random, Result result) {
+        String query = scenario.query(this, random);
+        String body = scenario.body(this, random);
+        long start = System.nanoTime();
+        boolean ok = false;
+        HttpURLConnection con = null;
+        try {
+            con = (HttpURLConnection) new URL(url + scenario.getPath()
+                    + (query == null ? "" : "?" + query)).openConnection();
+            con.setRequestMethod(scenario.getMethod());
+            con.setConnectTimeout(10000);
+            con.setReadTimeout(60000);
+            if (body != null) {
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                con.setDoOutput(true);
+                con.setRequestProperty("Content-Type", "application/json");
+                con.setFixedLengthStreamingMode(bytes.length);
+                OutputStream out = con.getOutputStream();
+                try {
+                    out.write(bytes);
+                } finally {
+                    out.close();
+                }
+            }
+            int status = con.getResponseCode();
+            String response = read(status < 400 ? con.getInputStream() : con.getErrorStream());
+            ok = status == 200 && !response.contains("\"status\":false");
+            if (status == 503) {
+                result.unavailable.incrementAndGet();
+            }
+        } catch (IOException ex) {
+            ok = false;
+        }
+        result.latency.recordNanos(System.nanoTime() - start);
+        result.requests.incrementAndGet();
+        if (!ok) {
+            result.errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Metodo utilizado para consultar una seccion de las metricas del
+     * servidor.
+     *
+     * @return la seccion, o el error si no se pudo consultar.
+     */
+    String getMetrics(String section) {
+        try {
+            HttpURLConnection con = (HttpURLConnection) new URL(url + "/Service/metrics").openConnection();
+            con.setConnectTimeout(10000);
+            con.setReadTimeout(10000);
+            JsonReader reader = Json.createReader(new StringReader(read(con.getInputStream())));
+            try {
+                return String.valueOf(reader.readObject().get(section));
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | RuntimeException ex) {
+            return String.valueOf(ex.getMessage());
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    int getOrdenes() {
+        return ordenes;
+    }
+
+    int getDetalle() {
+        return detalle;
+    }
+
+    int getInsertRows() {
+        return insertRows;
+    }
+
+    long getSharedLatencyMs() {
+        return sharedLatencyMs;
+    }
+
+    /**
+     * Resultado de un escenario.
+     */
+    static final class Result {
+
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong unavailable = new AtomicLong();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private long elapsedNanos;
+
+        String format(Scenario scenario) {
+            long total = requests.get();
+            return String.format(Locale.US, "%-9s %10d %8d %7.2f%% %10.1f %9.2f %9.2f %9.2f %9.2f%s",
+                    scenario.name().toLowerCase(Locale.US), total, errors.get(),
+                    total == 0 ? 0.0 : errors.get() * 100.0 / total,
+                    elapsedNanos == 0 ? 0.0 : total * 1e9 / elapsedNanos,
+                    latency.getPercentile(50) / 1000.0, latency.getPercentile(95) / 1000.0,
+                    latency.getPercentile(99) / 1000.0, latency.getMax() / 1000.0,
+                    unavailable.get() > 0 ? "  (503: " + unavailable.get() + ")" : "");
+        }
+    }
+}
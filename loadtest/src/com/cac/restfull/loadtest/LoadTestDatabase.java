@@ -0,0 +1,139 @@
+package com.cac.restfull.loadtest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base de datos H2 en memoria, en modo Oracle, con las tablas de ordenes de
+ * trabajo que usan las pruebas de carga.
+ *
+ * La funcion MAQUINARIAN.MA_FN_CORRELATIVO_OT se reemplaza por
+ * {@link #correlativoOt(int, int, int)}; la funcion ESPERAR bloquea la
+ * lectura el tiempo indicado, para simular una consulta lenta.
+ *
+ * @author atorres
+ */
+public final class LoadTestDatabase {
+
+    public static final String URL = "jdbc:h2:mem:cac;MODE=Oracle;DB_CLOSE_DELAY=-1";
+    public static final String USER = "sa";
+    public static final String PASS = "";
+
+    public static final int EMPRESA = 1;
+    public static final int AREA = 10;
+    public static final int TIPO_OT = 2;
+
+    private LoadTestDatabase() {
+    }
+
+    /**
+     * Metodo utilizado para indicar a la aplicacion que use esta base de
+     * datos. Debe llamarse antes de iniciar el servidor.
+     */
+    public static void configure() {
+        System.setProperty("cac.db.driver", "org.h2.Driver");
+        System.setProperty("cac.db.url", URL);
+        System.setProperty("cac.db.user", USER);
+        System.setProperty("cac.db.password", PASS);
+    }
+
+    /**
+     * Metodo utilizado para crear las tablas y cargar las ordenes iniciales.
+     *
+     * @param ordenes ordenes de trabajo a crear, numeradas desde 1.
+     * @param detalle registros de detalle por orden.
+     */
+    public static void create(int ordenes, int detalle) throws Exception {
+        Class.forName("org.h2.Driver");
+        Connection con = DriverManager.getConnection(URL, USER, PASS);
+        try {
+            con.setAutoCommit(false);
+            Statement st = con.createStatement();
+            st.execute("CREATE SCHEMA IF NOT EXISTS MAQUINARIAN");
+            st.execute("CREATE TABLE MAQUINARIAN.MA_MAESTRO_ORDEN_TRABAJO ("
+                    + "ID_EMPRESA NUMBER(4) NOT NULL, NO_ORDEN_TRABAJO NUMBER(10) NOT NULL, "
+                    + "CORRELATIVO_OT VARCHAR2(30), ID_AREA NUMBER(4), ID_TIPO_OT NUMBER(4), "
+                    + "ID_EQUIPO NUMBER(10), FECHA_ORDEN DATE, DESCRIPCION VARCHAR2(200), "
+                    + "HOROMETRO NUMBER(12,2), ESTADO VARCHAR2(1), "
+                    + "PRIMARY KEY (ID_EMPRESA, NO_ORDEN_TRABAJO))");
+            st.execute("CREATE TABLE MAQUINARIAN.MA_CORRELATIVO_ORDEN_TRABAJO ("
+                    + "ID_EMPRESA NUMBER(4) NOT NULL PRIMARY KEY, HI NUMBER(10) NOT NULL)");
+            st.execute("CREATE TABLE MAQUINARIAN.MA_DETALLE_ORDEN_TRABAJO ("
+                    + "ID_EMPRESA NUMBER(4) NOT NULL, NO_ORDEN_TRABAJO NUMBER(10) NOT NULL, "
+                    + "LINEA NUMBER(4) NOT NULL, ID_ACTIVIDAD NUMBER(10), ID_EMPLEADO NUMBER(10), "
+                    + "HORAS NUMBER(8,2), FECHA_INICIO DATE, OBSERVACION VARCHAR2(200), "
+                    + "PRIMARY KEY (ID_EMPRESA, NO_ORDEN_TRABAJO, LINEA))");
+            st.execute("CREATE TABLE MAQUINARIAN.MA_LECTURA_HOROMETRO ("
+                    + "ID_EMPRESA NUMBER(4) NOT NULL, ID_EQUIPO NUMBER(10) NOT NULL, "
+                    + "FECHA_LECTURA DATE, HOROMETRO NUMBER(12,2), ID_EMPLEADO NUMBER(10), "
+                    + "OBSERVACION VARCHAR2(200))");
+            st.execute("CREATE ALIAS MAQUINARIAN.MA_FN_CORRELATIVO_OT FOR \""
+                    + LoadTestDatabase.class.getName() + ".correlativoOt\"");
+            st.execute("CREATE ALIAS ESPERAR FOR \""
+                    + LoadTestDatabase.class.getName() + ".esperar\"");
+            st.close();
+
+            PreparedStatement maestro = con.prepareStatement(
+                    "INSERT INTO MAQUINARIAN.MA_MAESTRO_ORDEN_TRABAJO VALUES (?,?,?,?,?,?,?,?,?,?)");
+            PreparedStatement lineas = con.prepareStatement(
+                    "INSERT INTO MAQUINARIAN.MA_DETALLE_ORDEN_TRABAJO VALUES (?,?,?,?,?,?,?,?)");
+            long fecha = System.currentTimeMillis() - ordenes * 3600000L;
+            for (int i = 1; i <= ordenes; i++) {
+                maestro.setInt(1, EMPRESA);
+                maestro.setInt(2, i);
+                maestro.setString(3, "OT-" + AREA + "-" + i);
+                maestro.setInt(4, AREA);
+                maestro.setInt(5, TIPO_OT);
+                maestro.setInt(6, i % 300);
+                maestro.setTimestamp(7, new Timestamp(fecha + i * 3600000L));
+                maestro.setString(8, "Mantenimiento preventivo del equipo " + (i % 300));
+                maestro.setDouble(9, 1000 + i * 1.5);
+                maestro.setString(10, i % 10 == 0 ? "C" : "A");
+                maestro.addBatch();
+                for (int j = 1; j <= detalle; j++) {
+                    lineas.setInt(1, EMPRESA);
+                    lineas.setInt(2, i);
+                    lineas.setInt(3, j);
+                    lineas.setInt(4, j * 10);
+                    lineas.setInt(5, 500 + (i + j) % 50);
+                    lineas.setDouble(6, 1.5 * j);
+                    lineas.setTimestamp(7, new Timestamp(fecha + i * 3600000L));
+                    lineas.setString(8, "Actividad " + j + " de la orden " + i);
+                    lineas.addBatch();
+                }
+                if (i % 500 == 0) {
+                    maestro.executeBatch();
+                    lineas.executeBatch();
+                }
+            }
+            maestro.executeBatch();
+            lineas.executeBatch();
+            maestro.close();
+            lineas.close();
+            con.commit();
+        } finally {
+            con.close();
+        }
+    }
+
+    /**
+     * Reemplazo de MAQUINARIAN.MA_FN_CORRELATIVO_OT.
+     */
+    public static String correlativoOt(int empresa, int area, int tipoOt) throws SQLException {
+        return "OT-" + empresa + "-" + area + "-" + tipoOt + "-" + System.nanoTime();
+    }
+
+    /**
+     * Funcion ESPERAR: bloquea el hilo los milisegundos indicados.
+     */
+    public static int esperar(long millis) {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+        return 1;
+    }
+}
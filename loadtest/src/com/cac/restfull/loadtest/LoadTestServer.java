@@ -0,0 +1,45 @@
+package com.cac.restfull.loadtest;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.webapp.WebAppContext;
+
+/**
+ * Contenedor Jetty embebido que publica la aplicacion desde la carpeta
+ * compilada (build/web), con el ServletContainer de Jersey configurado en su
+ * web.xml.
+ *
+ * @author atorres
+ */
+public class LoadTestServer {
+
+    private final Server server;
+
+    /**
+     * @param webDir carpeta de la aplicacion compilada, con WEB-INF/web.xml.
+     * @param port puerto HTTP, 0 para tomar uno libre.
+     */
+    public LoadTestServer(String webDir, int port) {
+        server = new Server(port);
+        WebAppContext context = new WebAppContext(webDir, "/");
+        context.setDescriptor(webDir + "/WEB-INF/web.xml");
+        // javax.json y el driver de H2 vienen del classpath de la prueba.
+        context.setParentLoaderPriority(false);
+        server.setHandler(context);
+    }
+
+    public void start() throws Exception {
+        server.start();
+    }
+
+    public void stop() throws Exception {
+        server.stop();
+    }
+
+    /**
+     * @return url base de la aplicacion, por ejemplo http://localhost:8080.
+     */
+    public String getUrl() {
+        return "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+}
@@ -0,0 +1,165 @@
+package com.cac.restfull.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Peticiones que se envian en cada escenario de la prueba de carga. Los
+ * datos son aleatorios dentro de las ordenes cargadas por
+ * {@link LoadTestDatabase}.
+ *
+ * @author atorres
+ */
+enum Scenario {
+
+    /**
+     * Lectura de una orden y su detalle con getDataFromTable.
+     */
+    READ("GET", "/Service/getDataFromTable") {
+        @Override
+        String query(LoadTest test, ThreadLocalRandom random) {
+            int orden = 1 + random.nextInt(test.getOrdenes());
+            if (random.nextBoolean()) {
+                return "select=" + encode("{\"tableName\":\"MAQUINARIAN.MA_MAESTRO_ORDEN_TRABAJO\","
+                        + "\"columns\":[\"ID_EMPRESA\",\"NO_ORDEN_TRABAJO\",\"CORRELATIVO_OT\",\"ID_AREA\","
+                        + "\"ID_TIPO_OT\",\"ID_EQUIPO\",\"FECHA_ORDEN\",\"DESCRIPCION\",\"HOROMETRO\",\"ESTADO\"],"
+                        + "\"whereCondition\":\"ID_EMPRESA = ? and ID_EQUIPO = ?\","
+                        + "\"whereValues\":[" + LoadTestDatabase.EMPRESA + "," + (orden % 300) + "]}");
+            }
+            return "select=" + encode("{\"tableName\":\"MAQUINARIAN.MA_DETALLE_ORDEN_TRABAJO\","
+                    + "\"columns\":[\"NO_ORDEN_TRABAJO\",\"LINEA\",\"ID_ACTIVIDAD\",\"ID_EMPLEADO\","
+                    + "\"HORAS\",\"FECHA_INICIO\",\"OBSERVACION\"],"
+                    + "\"whereCondition\":\"ID_EMPRESA = ? and NO_ORDEN_TRABAJO = ?\","
+                    + "\"whereValues\":[" + LoadTestDatabase.EMPRESA + "," + orden + "]}");
+        }
+    },
+    /**
+     * La misma lectura desde todos los hilos: el detalle de las primeras 500
+     * ordenes, que espera load.sharedLatencyMs en el primer registro y cuya
+     * respuesta supera cac.coalesce.maxBytes, de modo que las lecturas que
+     * esperan a la primera terminan ejecutando la propia. Con mas hilos que
+     * cac.exec.threads comprueba que las que esperan no agotan los permisos
+     * del DBExecutor.
+     */
+    SHARED("GET", "/Service/getDataFromTable") {
+        @Override
+        String query(LoadTest test, ThreadLocalRandom random) {
+            return "select=" + encode("{\"tableName\":\"MAQUINARIAN.MA_DETALLE_ORDEN_TRABAJO\","
+                    + "\"columns\":[\"NO_ORDEN_TRABAJO\",\"LINEA\",\"ID_ACTIVIDAD\",\"ID_EMPLEADO\","
+                    + "\"HORAS\",\"FECHA_INICIO\",\"OBSERVACION\"],"
+                    + "\"whereCondition\":\"ID_EMPRESA = ? and NO_ORDEN_TRABAJO <= ? "
+                    + "and (NO_ORDEN_TRABAJO <> 1 or LINEA <> 1 or ESPERAR(?) = 1)\","
+                    + "\"whereValues\":[" + LoadTestDatabase.EMPRESA + ",500," + test.getSharedLatencyMs() + "]}");
+        }
+    },
+    /**
+     * Lecturas de horometro con insertDataIntoTable, en un solo lote.
+     */
+    INSERT("POST", "/Service/insertDataIntoTable") {
+        @Override
+        String body(LoadTest test, ThreadLocalRandom random) {
+            StringBuilder body = new StringBuilder("{\"rows\":[");
+            for (int i = 0; i < test.getInsertRows(); i++) {
+                if (i > 0) {
+                    body.append(',');
+                }
+                body.append("{\"tableName\":\"MAQUINARIAN.MA_LECTURA_HOROMETRO\",")
+                        .append("\"columns\":[\"ID_EMPRESA\",\"ID_EQUIPO\",\"FECHA_LECTURA\",\"HOROMETRO\",")
+                        .append("\"ID_EMPLEADO\",\"OBSERVACION\"],\"values\":[")
+                        .append(value("INTEGER", LoadTestDatabase.EMPRESA)).append(',')
+                        .append(value("INTEGER", random.nextInt(300))).append(',')
+                        .append(value("DATE", System.currentTimeMillis())).append(',')
+                        .append(value("FLOAT", random.nextInt(100000) / 10.0)).append(',')
+                        .append(value("INTEGER", 500 + random.nextInt(50))).append(',')
+                        .append(value("STRING", "Lectura de prueba " + i)).append("]}");
+            }
+            return body.append("]}").toString();
+        }
+    },
+    /**
+     * Creacion de una orden completa con insertOrdenTrabajo.
+     */
+    ORDEN("POST", "/Service/insertOrdenTrabajo") {
+        @Override
+        String body(LoadTest test, ThreadLocalRandom random) {
+            int equipo = random.nextInt(300);
+            long fecha = System.currentTimeMillis();
+            StringBuilder body = new StringBuilder("{\"encabezado\":{")
+                    .append("\"tableName\":\"MAQUINARIAN.MA_MAESTRO_ORDEN_TRABAJO\",")
+                    .append("\"columns\":[\"ID_EMPRESA\",\"NO_ORDEN_TRABAJO\",\"CORRELATIVO_OT\",\"ID_AREA\",")
+                    .append("\"ID_TIPO_OT\",\"ID_EQUIPO\",\"FECHA_ORDEN\",\"DESCRIPCION\",\"HOROMETRO\",\"ESTADO\"],")
+                    .append("\"values\":[")
+                    .append(value("INTEGER", LoadTestDatabase.EMPRESA)).append(',')
+                    .append(value("INTEGER", 0)).append(',')
+                    .append(value("STRING", "")).append(',')
+                    .append(value("INTEGER", LoadTestDatabase.AREA)).append(',')
+                    .append(value("INTEGER", LoadTestDatabase.TIPO_OT)).append(',')
+                    .append(value("INTEGER", equipo)).append(',')
+                    .append(value("DATE", fecha)).append(',')
+                    .append(value("STRING", "Orden de prueba del equipo " + equipo)).append(',')
+                    .append(value("FLOAT", random.nextInt(100000) / 10.0)).append(',')
+                    .append(value("STRING", "A")).append("]},\"detalle\":[");
+            for (int j = 1; j <= test.getDetalle(); j++) {
+                if (j > 1) {
+                    body.append(',');
+                }
+                body.append("{\"tableName\":\"MAQUINARIAN.MA_DETALLE_ORDEN_TRABAJO\",")
+                        .append("\"columns\":[\"ID_EMPRESA\",\"NO_ORDEN_TRABAJO\",\"LINEA\",\"ID_ACTIVIDAD\",")
+                        .append("\"ID_EMPLEADO\",\"HORAS\",\"FECHA_INICIO\",\"OBSERVACION\"],\"values\":[")
+                        .append(value("INTEGER", LoadTestDatabase.EMPRESA)).append(',')
+                        .append(value("INTEGER", 0)).append(',')
+                        .append(value("INTEGER", j)).append(',')
+                        .append(value("INTEGER", j * 10)).append(',')
+                        .append(value("INTEGER", 500 + random.nextInt(50))).append(',')
+                        .append(value("FLOAT", 1.5 * j)).append(',')
+                        .append(value("DATE", fecha)).append(',')
+                        .append(value("STRING", "Actividad " + j)).append("]}");
+            }
+            return body.append("],\"parametros\":{\"empresa\":\"").append(LoadTestDatabase.EMPRESA)
+                    .append("\",\"area\":\"").append(LoadTestDatabase.AREA)
+                    .append("\",\"tipo_ot\":\"").append(LoadTestDatabase.TIPO_OT)
+                    .append("\"}}").toString();
+        }
+    };
+
+    private final String method;
+    private final String path;
+
+    Scenario(String method, String path) {
+        this.method = method;
+        this.path = path;
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * @return parametros de la url, o null si no tiene.
+     */
+    String query(LoadTest test, ThreadLocalRandom random) {
+        return null;
+    }
+
+    /**
+     * @return cuerpo JSON de la peticion, o null si no tiene.
+     */
+    String body(LoadTest test, ThreadLocalRandom random) {
+        return null;
+    }
+
+    private static String value(String type, Object value) {
+        return "{\"type\":\"" + type + "\",\"value\":\"" + value + "\"}";
+    }
+
+    private static String encode(String text) {
+        try {
+            return java.net.URLEncoder.encode(text, "UTF-8");
+        } catch (java.io.UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.cac.restfull.database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import com.cac.restfull.webservice.AppConstant;
+import com.cac.restfull.webservice.Util;
+
+/**
+ * Varias lecturas de getDataFromTable en una sola peticion, segun el
+ * formato:
+ * {"queries" : JsonArray[{"id" : "clientes", "tableName" : "table name",
+ * "columns" : JsonArray[...], "whereCondition" : "...", "whereValues" :
+ * JsonArray[...]}, n...], "timeoutMs" : 5000}
+ *
+ * Cada consulta admite los mismos campos de {@link SelectRequest}, excepto
+ * el formato CBOR y la lectura en paralelo, cuyos rangos usarian los mismos
+ * hilos que ya ejecutan las consultas. La respuesta tiene el resultado de cada consulta bajo su
+ * id, en el orden en que terminan:
+ * {"tag" : "response", "status" : true, "results" : {"clientes" :
+ * {"tag" : "response", "status" : true, "tableName" : ..., "rows" : [...]},
+ * "otra" : {"tag" : "response", "status" : false, "error" : "mensaje"}}}
+ *
+ * Las consultas se ejecutan al mismo tiempo en los hilos de
+ * {@link ReadExecutor}, hasta {@link AppConstant#BATCH_PARALLEL} a la vez.
+ * Cada hilo lee y codifica su resultado completo en memoria, hasta
+ * {@link AppConstant#BATCH_MAX_RESULT_BYTES}, de modo que el tiempo de la
+ * peticion cubre tambien la lectura de los registros; la respuesta solo
+ * copia los resultados terminados. Una consulta con error, que supera el
+ * tamano maximo o que no termina dentro del tiempo de la peticion, responde
+ * con su error sin afectar a las demas. Una consulta identica a otra en curso
+ * espera su respuesta solo hasta el tiempo de la peticion, ver
+ * {@link ReadCoalescer}.
+ *
+ * @author atorres
+ */
+final class BatchSelect implements TableResult {
+
+    private static final Logger LOG = Logger.getLogger(BatchSelect.class.getName());
+
+    private static final byte[] START = "{\"tag\":\"response\",\"status\":true,\"results\":{"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "}}".getBytes(StandardCharsets.US_ASCII);
+
+    private final DBServiceManager manager;
+    private final String[] ids;
+    /** Peticion de cada consulta, null si no es valida. */
+    private final SelectRequest[] requests;
+    /** Error de las consultas no validas. */
+    private final String[] errors;
+    private final long deadline;
+    private final LinkedBlockingQueue<Completed> completed = new LinkedBlockingQueue<>();
+    private final Object lock = new Object();
+    private volatile boolean cancelled = false;
+    private int next = 0;
+
+    private BatchSelect(DBServiceManager manager, String[] ids, SelectRequest[] requests, String[] errors,
+            long deadline) {
+        this.manager = manager;
+        this.ids = ids;
+        this.requests = requests;
+        this.errors = errors;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Metodo utilizado para leer las consultas de la peticion. Las consultas
+     * con formato no valido se responden con su error.
+     *
+     * @throws IllegalArgumentException si la peticion no tiene consultas,
+     * tiene demasiadas o repite un id.
+     */
+    static BatchSelect fromJson(DBServiceManager manager, JsonObject obj) {
+        JsonArray queries = obj.getJsonArray("queries");
+        if (queries == null || queries.isEmpty()) {
+            throw new IllegalArgumentException("La peticion no tiene consultas en queries.");
+        }
+        if (queries.size() > AppConstant.BATCH_MAX_QUERIES) {
+            throw new IllegalArgumentException("La peticion supera el maximo de "
+                    + AppConstant.BATCH_MAX_QUERIES + " consultas.");
+        }
+
+        long timeout = AppConstant.BATCH_TIMEOUT_MS;
+        if (obj.containsKey("timeoutMs") && !obj.isNull("timeoutMs")) {
+            timeout = Math.min(timeout, Long.parseLong(obj.get("timeoutMs").toString().replace("\"", "")));
+        }
+
+        String[] ids = new String[queries.size()];
+        SelectRequest[] requests = new SelectRequest[ids.length];
+        String[] errors = new String[ids.length];
+        Set<String> unique = new HashSet<>();
+        for (int i = 0; i < ids.length; i++) {
+            JsonObject query = queries.getJsonObject(i);
+            JsonValue id = query.get("id");
+            ids[i] = id instanceof JsonString ? ((JsonString) id).getString()
+                    : id == null || id == JsonValue.NULL ? String.valueOf(i) : id.toString();
+            if (!unique.add(ids[i])) {
+                throw new IllegalArgumentException("Id repetido en queries: " + ids[i]);
+            }
+            try {
+                requests[i] = SelectRequest.fromJson(query);
+                if (requests[i].getFormat() == ResponseFormat.CBOR) {
+                    throw new IllegalArgumentException("Formato no soportado en queries: cbor");
+                }
+                if (requests[i].isParallel()) {
+                    throw new IllegalArgumentException("Lectura en paralelo no soportada en queries.");
+                }
+            } catch (RuntimeException ex) {
+                requests[i] = null;
+                errors[i] = String.valueOf(ex.getMessage());
+            }
+        }
+        return new BatchSelect(manager, ids, requests, errors, System.currentTimeMillis() + timeout);
+    }
+
+    /**
+     * Metodo utilizado para escribir los resultados a medida que terminan las
+     * consultas. Al vencer el tiempo de la peticion las consultas pendientes
+     * se responden con error y sus resultados se descartan al terminar.
+     */
+    @Override
+    public void write(OutputStream out) throws IOException {
+        boolean[] written = new boolean[ids.length];
+        int pending = 0;
+        try {
+            out.write(START);
+            boolean first = true;
+            for (int i = 0; i < ids.length; i++) {
+                if (requests[i] == null) {
+                    writeError(out, i, errors[i], first);
+                    written[i] = true;
+                    first = false;
+                } else {
+                    pending++;
+                }
+            }
+            for (int i = 0; i < AppConstant.BATCH_PARALLEL; i++) {
+                submitNext();
+            }
+
+            while (pending > 0) {
+                long wait = deadline - System.currentTimeMillis();
+                Completed done = wait > 0 ? completed.poll(wait, TimeUnit.MILLISECONDS) : null;
+                if (done == null) {
+                    break;
+                }
+                if (done.body != null) {
+                    out.write(JsonRowEncoder.encodeKey(ids[done.index], !first));
+                    out.write(done.body);
+                } else {
+                    writeError(out, done.index, done.error, first);
+                }
+                written[done.index] = true;
+                first = false;
+                pending--;
+                submitNext();
+            }
+
+            for (int i = 0; i < ids.length; i++) {
+                if (!written[i]) {
+                    writeError(out, i, "Tiempo de espera agotado.", first);
+                    first = false;
+                }
+            }
+            out.write(END);
+            out.flush();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } finally {
+            close();
+        }
+    }
+
+    private void writeError(OutputStream out, int index, String error, boolean first) throws IOException {
+        out.write(JsonRowEncoder.encodeKey(ids[index], !first));
+        out.write(Util.createJSON("response", false, error).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Metodo utilizado para iniciar la siguiente consulta valida, si la hay.
+     */
+    private void submitNext() {
+        synchronized (lock) {
+            while (next < requests.length && requests[next] == null) {
+                next++;
+            }
+            if (cancelled || next >= requests.length) {
+                return;
+            }
+            int index = next++;
+            ReadExecutor.execute(() -> run(index));
+        }
+    }
+
+    /**
+     * Metodo utilizado para ejecutar una consulta y leer su resultado
+     * completo. La escritura del resultado libera la conexion, aun con error.
+     */
+    private void run(int index) {
+        if (cancelled) {
+            return;
+        }
+        Completed done;
+        try {
+            TableResult result = manager.getDataFromTable(requests[index], deadline);
+            ResultBuffer buffer = new ResultBuffer(AppConstant.BATCH_MAX_RESULT_BYTES);
+            result.write(buffer);
+            done = new Completed(index, buffer.toByteArray(), null);
+        } catch (Exception ex) {
+            if (cancelled) {
+                return;
+            }
+            LOG.log(Level.SEVERE, "Error en la consulta " + ids[index], ex);
+            done = new Completed(index, null, String.valueOf(ex.getMessage()));
+        }
+        synchronized (lock) {
+            if (!cancelled) {
+                completed.add(done);
+            }
+        }
+    }
+
+    /**
+     * Metodo utilizado para descartar las consultas que no se llegaron a
+     * escribir; las que se estan leyendo se detienen en el siguiente bloque
+     * y liberan su conexion.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            cancelled = true;
+        }
+        completed.clear();
+    }
+
+    /**
+     * Resultado de una consulta, o su error.
+     */
+    private static final class Completed {
+
+        final int index;
+        final byte[] body;
+        final String error;
+
+        Completed(int index, byte[] body, String error) {
+            this.index = index;
+            this.body = body;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Resultado de una consulta en memoria. Falla al superar el tamano
+     * maximo o al cancelarse la peticion, lo que detiene la lectura.
+     */
+    private final class ResultBuffer extends OutputStream {
+
+        private final int limit;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+
+        ResultBuffer(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            check(1);
+            buffer.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            check(len);
+            buffer.write(b, off, len);
+        }
+
+        private void check(int len) throws IOException {
+            if (cancelled) {
+                throw new IOException("Consulta cancelada.");
+            }
+            if (buffer.size() + len > limit) {
+                throw new IOException("El resultado supera el maximo de " + limit
+                        + " bytes por consulta, utilice getDataFromTable.");
+            }
+        }
+
+        byte[] toByteArray() {
+            return buffer.toByteArray();
+        }
+    }
+}
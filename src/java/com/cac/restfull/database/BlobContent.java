@@ -0,0 +1,196 @@
+package com.cac.restfull.database;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Contenido de un BLOB listo para escribirse en la respuesta de
+ * downloadBlob, completo o en el rango de bytes solicitado.
+ *
+ * Mantiene abierta la conexion hasta terminar de escribir; los bytes se
+ * copian del stream del BLOB a la salida sin cargar el valor en memoria.
+ *
+ * @author atorres
+ */
+public class BlobContent {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Connection con;
+    private final Statement st;
+    private final ResultSet rs;
+    private final Blob blob;
+    private final String contentType;
+    private final long total;
+    private final long start;
+    private final long end;
+    private final boolean partial;
+
+    /**
+     * @param range valor del encabezado Range, o null para el valor
+     * completo.
+     */
+    BlobContent(Connection con, Statement st, ResultSet rs, Blob blob, String contentType,
+            String range) throws SQLException {
+        this.con = con;
+        this.st = st;
+        this.rs = rs;
+        this.blob = blob;
+        this.contentType = contentType;
+        this.total = blob.length();
+
+        long[] bounds = parseRange(range, total);
+        if (bounds == null) {
+            start = 0;
+            end = total - 1;
+            partial = false;
+        } else {
+            start = bounds[0];
+            end = bounds[1];
+            partial = true;
+        }
+    }
+
+    /**
+     * Metodo utilizado para interpretar el encabezado Range. Solo se atiende
+     * un rango de bytes; con varios rangos, o un encabezado no valido, se
+     * envia el valor completo.
+     *
+     * @return inicio y fin (inclusive) del rango, null para el valor
+     * completo, o {-1, -1} si el rango no se puede satisfacer.
+     */
+    static long[] parseRange(String range, long total) {
+        if (range == null || !range.trim().startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = range.trim().substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long from;
+            long to;
+            if (first.isEmpty()) {
+                // Sufijo: los ultimos n bytes.
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || total == 0) {
+                    return new long[]{-1, -1};
+                }
+                from = Math.max(total - suffix, 0);
+                to = total - 1;
+            } else {
+                from = Long.parseLong(first);
+                to = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (to < from) {
+                    return null;
+                }
+                if (from >= total) {
+                    return new long[]{-1, -1};
+                }
+                to = Math.min(to, total - 1);
+            }
+            return new long[]{from, to};
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return false si el rango solicitado esta fuera del valor y se debe
+     * responder 416.
+     */
+    public boolean isSatisfiable() {
+        return start >= 0;
+    }
+
+    /**
+     * @return true si se envia solo el rango solicitado (206).
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return bytes que se envian.
+     */
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * @return tamano completo del valor.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Metodo utilizado para escribir el rango en la salida y liberar la
+     * conexion.
+     */
+    public void write(OutputStream out) throws IOException {
+        try {
+            InputStream in = blob.getBinaryStream();
+            try {
+                long skipped = 0;
+                while (skipped < start) {
+                    long n = in.skip(start - skipped);
+                    if (n <= 0) {
+                        throw new IOException("No se pudo posicionar el BLOB en el byte " + start);
+                    }
+                    skipped += n;
+                }
+                byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(getLength(), 1))];
+                long remaining = getLength();
+                while (remaining > 0) {
+                    int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (n < 0) {
+                        break;
+                    }
+                    out.write(buffer, 0, n);
+                    remaining -= n;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Metodo utilizado para liberar la conexion cuando el contenido no se
+     * llega a escribir.
+     */
+    public void close() {
+        try {
+            rs.close();
+        } catch (SQLException ex) {
+            // Se cierra junto con el statement.
+        }
+        DBConnection.close(st, con);
+    }
+}
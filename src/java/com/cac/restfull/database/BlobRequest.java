@@ -0,0 +1,100 @@
+package com.cac.restfull.database;
+
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+
+/**
+ * Peticion de carga o descarga de un campo BLOB, segun el formato recibido
+ * en uploadBlob y downloadBlob:
+ * {"tableName":"table name", "column":"blob column",
+ * "whereCondition" : "condition1 = ? and condition2 = ? ...",
+ * "whereValues" : JsonArray[ParamValue1, ParamValue2, n...],
+ * "encoding" : "base64", "length" : 1024, "contentType" : "image/jpeg"}
+ *
+ * La condicion debe identificar un solo registro. Los campos encoding y
+ * length solo aplican a la carga: con encoding base64 el cuerpo se decodifica
+ * a medida que se lee y length indica el tamano ya decodificado. contentType
+ * es el tipo con el que se responde la descarga.
+ *
+ * @author atorres
+ */
+public class BlobRequest {
+
+    private final String tableName;
+    private final String column;
+    private final String whereCondition;
+    private final JsonArray whereValues;
+    private final boolean base64;
+    private final long length;
+    private final String contentType;
+
+    public BlobRequest(String tableName, String column, String whereCondition, JsonArray whereValues,
+            boolean base64, long length, String contentType) {
+        this.tableName = tableName;
+        this.column = column;
+        this.whereCondition = whereCondition;
+        this.whereValues = whereValues;
+        this.base64 = base64;
+        this.length = length;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Metodo utilizado para leer la peticion desde el JSON del cliente.
+     *
+     * @throws IllegalArgumentException en caso de que la tabla o la columna
+     * no sean validas, o falte la condicion.
+     */
+    public static BlobRequest fromJson(JsonObject obj) {
+        String tableName = obj.getString("tableName");
+        String column = obj.getString("column");
+        if (!SelectRequest.IDENTIFIER.matcher(tableName).matches()) {
+            throw new IllegalArgumentException("Tabla no valida: " + tableName);
+        }
+        if (!SelectRequest.IDENTIFIER.matcher(column).matches()) {
+            throw new IllegalArgumentException("Columna no valida: " + column);
+        }
+        String whereCondition = obj.getString("whereCondition", "");
+        if (whereCondition.trim().isEmpty()) {
+            throw new IllegalArgumentException("Se requiere whereCondition para identificar el registro.");
+        }
+        JsonNumber length = obj.getJsonNumber("length");
+        return new BlobRequest(tableName, column, whereCondition, obj.getJsonArray("whereValues"),
+                "base64".equalsIgnoreCase(obj.getString("encoding", "")),
+                length == null ? -1 : length.longValue(),
+                obj.getString("contentType", "application/octet-stream"));
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public String getWhereCondition() {
+        return whereCondition;
+    }
+
+    public JsonArray getWhereValues() {
+        return whereValues;
+    }
+
+    public boolean isBase64() {
+        return base64;
+    }
+
+    /**
+     * @return tamano decodificado indicado por el cliente, -1 si no se
+     * indico.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+}
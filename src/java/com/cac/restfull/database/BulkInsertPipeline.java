@@ -0,0 +1,344 @@
+package com.cac.restfull.database;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+import com.cac.restfull.webservice.AppConstant;
+import static com.cac.restfull.database.DBConnection.getDBConnection;
+
+/**
+ * Carga masiva de registros en formato NDJSON: un registro por linea con el
+ * formato {"tableName":"tabla","columns":[...],"values":[...]}.
+ *
+ * El hilo de la peticion lee las lineas y arma lotes por sentencia, que se
+ * entregan a una cola acotada; varios escritores, cada uno con su propia
+ * conexion del pool, toman los lotes y los ejecutan. Si los escritores no dan
+ * abasto la cola se llena y la lectura del cuerpo se detiene hasta que haya
+ * espacio.
+ *
+ * Los escritores corren en hilos compartidos por todas las cargas, de modo
+ * que entre todas no ocupan mas de {@link AppConstant#BULK_WRITERS}
+ * conexiones; una carga que llega con los hilos ocupados espera a que se
+ * liberen.
+ *
+ * Cada lote se confirma por separado. Si un lote falla se repite registro por
+ * registro, de modo que solo se rechazan los registros invalidos.
+ *
+ * @author atorres
+ */
+class BulkInsertPipeline {
+
+    private static final Logger LOG = Logger.getLogger(BulkInsertPipeline.class.getName());
+
+    /** Marca de fin de la cola, uno por escritor. */
+    private static final List<InsertBatchWriter.Row> END = Collections.emptyList();
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private static final ExecutorService WRITERS = createExecutor();
+
+    /**
+     * Conversion de un registro leido al insert a ejecutar.
+     */
+    interface RowConverter {
+
+        InsertBatchWriter.Row convert(int index, JsonRow row) throws Exception;
+    }
+
+    private final RowConverter converter;
+    private final int writers;
+    private final int batchSize;
+    private final int maxErrors;
+    private final BlockingQueue<List<InsertBatchWriter.Row>> queue;
+
+    private long received = 0;
+    private final AtomicLong inserted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final List<RowError> errors = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> tables = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile Exception failure;
+    private long elapsed;
+
+    /**
+     * @param writers cantidad de escritores, cada uno ocupa una conexion.
+     * @param queueSize lotes que pueden esperar en la cola.
+     * @param batchSize registros por lote.
+     * @param maxErrors registros rechazados que se detallan en la respuesta.
+     */
+    BulkInsertPipeline(RowConverter converter, int writers, int queueSize, int batchSize, int maxErrors) {
+        this.converter = converter;
+        this.writers = Math.max(writers, 1);
+        this.batchSize = Math.max(batchSize, 1);
+        this.maxErrors = maxErrors;
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueSize, 1));
+    }
+
+    private static ExecutorService createExecutor() {
+        int threads = Math.max(Math.min(AppConstant.BULK_WRITERS, AppConstant.POOL_MAX_SIZE), 1);
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "BulkInsertPipeline-writer-" + THREADS.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Metodo utilizado para procesar el cuerpo completo. Termina cuando todos
+     * los lotes fueron escritos o al primer error de conexion.
+     */
+    void run(InputStream body) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < writers; i++) {
+                futures.add(WRITERS.submit(() -> {
+                    write();
+                    return null;
+                }));
+            }
+            try {
+                read(body);
+            } catch (Exception ex) {
+                fail(ex);
+            } finally {
+                for (int i = 0; i < writers; i++) {
+                    queue.put(END);
+                }
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    fail(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+                }
+            }
+        } finally {
+            // Los hilos son compartidos, se detienen los escritores de esta
+            // carga que sigan esperando lotes.
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            elapsed = System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * Metodo utilizado para leer las lineas y armar los lotes. Las lineas
+     * invalidas se rechazan sin detener la carga.
+     */
+    private void read(InputStream body) throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        JsonParserFactory factory = Json.createParserFactory(null);
+        Map<String, List<InsertBatchWriter.Row>> pending = new HashMap<>();
+
+        String line;
+        int lineNo = 0;
+        while (failure == null && (line = reader.readLine()) != null) {
+            lineNo++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            received++;
+
+            InsertBatchWriter.Row row;
+            JsonParser parser = factory.createParser(new StringReader(line));
+            try {
+                JsonRow.expect(parser, parser.next(), Event.START_OBJECT);
+                row = converter.convert(lineNo, JsonRow.read(parser));
+            } catch (Exception ex) {
+                reject(lineNo, ex);
+                continue;
+            } finally {
+                parser.close();
+            }
+
+            List<InsertBatchWriter.Row> chunk = pending.get(row.sql);
+            if (chunk == null) {
+                chunk = new ArrayList<>(batchSize);
+                pending.put(row.sql, chunk);
+            }
+            chunk.add(row);
+            if (chunk.size() == batchSize) {
+                pending.remove(row.sql);
+                queue.put(chunk);
+            }
+        }
+        for (List<InsertBatchWriter.Row> chunk : pending.values()) {
+            if (failure == null) {
+                queue.put(chunk);
+            }
+        }
+    }
+
+    /**
+     * Trabajo de cada escritor. Ante un error de conexion sigue vaciando la
+     * cola para no bloquear la lectura.
+     */
+    private void write() throws InterruptedException {
+        Connection con = null;
+        try {
+            con = getDBConnection();
+            con.setAutoCommit(false);
+            List<InsertBatchWriter.Row> chunk;
+            while ((chunk = queue.take()) != END) {
+                if (failure == null) {
+                    writeChunk(con, chunk);
+                }
+            }
+        } catch (SQLException | ClassNotFoundException ex) {
+            fail(ex);
+            while (queue.take() != END) {
+                // Se descartan los lotes pendientes.
+            }
+        } finally {
+            DBConnection.close(null, con);
+        }
+    }
+
+    private void writeChunk(Connection con, List<InsertBatchWriter.Row> chunk) throws SQLException {
+        tables.add(chunk.get(0).table);
+        PreparedStatement ps = null;
+        try {
+            ps = con.prepareStatement(chunk.get(0).sql);
+            for (InsertBatchWriter.Row row : chunk) {
+                InsertBatchWriter.bindValues(ps, row.values);
+                ps.addBatch();
+            }
+            long start = System.nanoTime();
+            ps.executeBatch();
+            Metrics.getInstance().getStatementExecution().recordNanos(System.nanoTime() - start);
+            con.commit();
+            inserted.addAndGet(chunk.size());
+            Metrics.getInstance().table(chunk.get(0).table).addInserted(chunk.size());
+            return;
+        } catch (Exception ex) {
+            LOG.log(Level.FINE, "Lote rechazado, se insertan los registros uno a uno", ex);
+            con.rollback();
+        } finally {
+            DBConnection.close(ps, null);
+        }
+        writeRows(con, chunk);
+    }
+
+    /**
+     * Metodo utilizado para insertar un lote rechazado registro por
+     * registro, confirmando los que no fallan. Cada registro se inserta
+     * despues de un savepoint y si falla se vuelve a el, ya que algunas bases
+     * (PostgreSQL) invalidan la transaccion completa al fallar una sentencia.
+     */
+    private void writeRows(Connection con, List<InsertBatchWriter.Row> chunk) throws SQLException {
+        PreparedStatement ps = null;
+        int count = 0;
+        try {
+            for (InsertBatchWriter.Row row : chunk) {
+                Savepoint savepoint = con.setSavepoint();
+                try {
+                    if (ps == null) {
+                        ps = con.prepareStatement(row.sql);
+                    }
+                    InsertBatchWriter.bindValues(ps, row.values);
+                    ps.executeUpdate();
+                    count++;
+                } catch (Exception ex) {
+                    reject(row.index, ex);
+                    con.rollback(savepoint);
+                    DBConnection.close(ps, null);
+                    ps = null;
+                }
+            }
+            con.commit();
+            inserted.addAndGet(count);
+            Metrics.getInstance().table(chunk.get(0).table).addInserted(count);
+        } finally {
+            DBConnection.close(ps, null);
+        }
+    }
+
+    private void reject(int line, Exception ex) {
+        rejected.incrementAndGet();
+        synchronized (errors) {
+            if (errors.size() < maxErrors) {
+                errors.add(new RowError(line, String.valueOf(ex.getMessage())));
+            }
+        }
+    }
+
+    private void fail(Exception ex) {
+        LOG.log(Level.SEVERE, "Error en la carga masiva", ex);
+        if (failure == null) {
+            failure = ex;
+        }
+    }
+
+    long getReceived() {
+        return received;
+    }
+
+    long getInserted() {
+        return inserted.get();
+    }
+
+    long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return los primeros registros rechazados, con el numero de linea.
+     */
+    List<RowError> getErrors() {
+        return errors;
+    }
+
+    Set<String> getTables() {
+        return tables;
+    }
+
+    /**
+     * @return error que detuvo la carga, o null si se proceso completa.
+     */
+    Exception getFailure() {
+        return failure;
+    }
+
+    long getElapsed() {
+        return elapsed;
+    }
+
+    static final class RowError {
+
+        final int line;
+        final String error;
+
+        RowError(int line, String error) {
+            this.line = line;
+            this.error = error;
+        }
+    }
+}
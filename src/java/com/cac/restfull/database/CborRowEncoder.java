@@ -0,0 +1,206 @@
+package com.cac.restfull.database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Respuesta en CBOR (RFC 8949) con la estructura del formato compacto:
+ * {"tag":"response", "status":true, "tableName":"tabla",
+ * "columns":[...], "rows":[[...], ...], "nextCursor":"cursor"}
+ *
+ * El objeto y el arreglo de registros usan longitud indefinida, de modo que
+ * se escriben a medida que se leen los registros. Los BLOB se envian como
+ * bytes, los decimales con el tag 4 (fraccion decimal) y las fechas en
+ * milisegundos, igual que en JSON. Los nombres de las columnas se toman ya
+ * codificados del {@link RowPlan}.
+ *
+ * @author atorres
+ */
+class CborRowEncoder extends RowEncoder {
+
+    private static final int UNSIGNED = 0;
+    private static final int NEGATIVE = 1 << 5;
+    private static final int BYTES = 2 << 5;
+    private static final int TEXT = 3 << 5;
+    private static final int ARRAY = 4 << 5;
+    private static final int TAG = 6 << 5;
+
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int DOUBLE = 0xfb;
+    private static final int START_ARRAY = 0x9f;
+    private static final int START_MAP = 0xbf;
+    private static final int BREAK = 0xff;
+
+    private static final int TAG_POSITIVE_BIGNUM = 2;
+    private static final int TAG_NEGATIVE_BIGNUM = 3;
+    private static final int TAG_DECIMAL = 4;
+
+    private int columnCount;
+
+    CborRowEncoder(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Metodo utilizado para codificar el arreglo con los nombres de las
+     * columnas.
+     */
+    static byte[] encodeNames(String[] names) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CborRowEncoder encoder = new CborRowEncoder(bytes);
+        try {
+            encoder.writeHead(ARRAY, names.length);
+            for (String name : names) {
+                encoder.writeText(name);
+            }
+            encoder.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    void start(String tableName, RowPlan plan) throws IOException {
+        columnCount = plan.size();
+        write(START_MAP);
+        writeText("tag");
+        writeText("response");
+        writeText("status");
+        write(TRUE);
+        writeText("tableName");
+        writeText(tableName);
+        writeText("columns");
+        write(plan.getCborColumns());
+        writeText("rows");
+        write(START_ARRAY);
+    }
+
+    @Override
+    void startRow() throws IOException {
+        writeHead(ARRAY, columnCount);
+    }
+
+    @Override
+    void endRow() {
+    }
+
+    @Override
+    void end(boolean paged, String nextCursor) throws IOException {
+        write(BREAK);
+        if (paged) {
+            writeText("nextCursor");
+            if (nextCursor == null) {
+                write(NULL);
+            } else {
+                writeText(nextCursor);
+            }
+        }
+        write(BREAK);
+        flush();
+    }
+
+    @Override
+    void writeNull(int column) throws IOException {
+        write(NULL);
+    }
+
+    @Override
+    void writeString(int column, String value) throws IOException {
+        writeText(value);
+    }
+
+    @Override
+    void writeLong(int column, long value) throws IOException {
+        if (value >= 0) {
+            writeHead(UNSIGNED, value);
+        } else {
+            writeHead(NEGATIVE, -1 - value);
+        }
+    }
+
+    /**
+     * Fraccion decimal: [exponente, mantisa], con la mantisa como entero o,
+     * si no cabe en un long, como bignum.
+     */
+    @Override
+    void writeDecimal(int column, BigDecimal value) throws IOException {
+        writeHead(TAG, TAG_DECIMAL);
+        writeHead(ARRAY, 2);
+        writeLong(column, -value.scale());
+        BigInteger mantissa = value.unscaledValue();
+        if (mantissa.bitLength() < 64) {
+            writeLong(column, mantissa.longValue());
+        } else if (mantissa.signum() >= 0) {
+            writeHead(TAG, TAG_POSITIVE_BIGNUM);
+            writeBytes(mantissa.toByteArray());
+        } else {
+            writeHead(TAG, TAG_NEGATIVE_BIGNUM);
+            writeBytes(mantissa.negate().subtract(BigInteger.ONE).toByteArray());
+        }
+    }
+
+    @Override
+    void writeDouble(int column, double value) throws IOException {
+        write(DOUBLE);
+        long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            write((int) (bits >>> shift));
+        }
+    }
+
+    @Override
+    void writeBoolean(int column, boolean value) throws IOException {
+        write(value ? TRUE : FALSE);
+    }
+
+    @Override
+    void writeBinary(int column, byte[] value) throws IOException {
+        writeBytes(value);
+    }
+
+    private void writeText(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeHead(TEXT, bytes.length);
+        write(bytes, 0, bytes.length);
+    }
+
+    private void writeBytes(byte[] value) throws IOException {
+        writeHead(BYTES, value.length);
+        write(value, 0, value.length);
+    }
+
+    /**
+     * Metodo utilizado para escribir el tipo mayor con su argumento en la
+     * forma mas corta.
+     */
+    private void writeHead(int major, long value) throws IOException {
+        if (value < 24) {
+            write(major | (int) value);
+        } else if (value < 0x100) {
+            write(major | 24);
+            write((int) value);
+        } else if (value < 0x10000) {
+            write(major | 25);
+            write((int) (value >>> 8));
+            write((int) value);
+        } else if (value < 0x100000000L) {
+            write(major | 26);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        } else {
+            write(major | 27);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+    }
+}
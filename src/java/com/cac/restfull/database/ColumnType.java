@@ -0,0 +1,64 @@
+package com.cac.restfull.database;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Tipo de una columna del resultado, resuelto una sola vez desde el
+ * ResultSetMetaData. El {@link RowPlan} lee cada valor con el getter del tipo
+ * y lo entrega al {@link RowEncoder} del formato de la respuesta.
+ *
+ * Las fechas se escriben en milisegundos; los BLOB en Base64 en JSON y como
+ * bytes en CBOR.
+ *
+ * @author atorres
+ */
+enum ColumnType {
+
+    STRING,
+    LONG,
+    DECIMAL,
+    DOUBLE,
+    BOOLEAN,
+    TIMESTAMP,
+    BINARY;
+
+    /**
+     * Metodo utilizado para obtener el tipo de una columna segun el tipo JDBC.
+     * Los NUMBER de Oracle sin decimales que caben en un long se leen como
+     * long; el resto como BigDecimal para no perder precision.
+     */
+    static ColumnType of(ResultSetMetaData metaData, int column) throws SQLException {
+        switch (metaData.getColumnType(column)) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return LONG;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                int precision = metaData.getPrecision(column);
+                int scale = metaData.getScale(column);
+                return scale == 0 && precision > 0 && precision <= 18 ? LONG : DECIMAL;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return DOUBLE;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return BOOLEAN;
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return TIMESTAMP;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return BINARY;
+            default:
+                return STRING;
+        }
+    }
+}
@@ -2,29 +2,95 @@ package com.cac.restfull.database;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import com.cac.restfull.webservice.AppConstant;
 
 /**
- * Clase encargada de gestionar la comunicacion con la base de datos oracle.
+ * Clase encargada de gestionar la comunicacion con la base de datos.
+ * Las conexiones se obtienen de un {@link DBConnectionPool} compartido y deben
+ * cerrarse al terminar cada operacion para devolverlas al pool.
  * 
  * @author ATORRES
  */
 public class DBConnection {
     
-    private static Connection connection = null;
+    private static volatile DBConnectionPool pool = null;
     private static final Logger LOG = Logger.getLogger(DBConnection.class.getName());
     
     private DBConnection() {}
     
+    /**
+     * Metodo utilizado para tomar prestada una conexion del pool.
+     *
+     * @return conexion exclusiva para la operacion en curso, al cerrarla se
+     * devuelve al pool.
+     */
     public static Connection getDBConnection() throws ClassNotFoundException, SQLException {
-        if ( connection == null ){
-            //Cargamos el driver.
-            Class.forName(AppConstant.DB_CLASS);
-            //Accedemos a la base de datos.
-            connection = DriverManager.getConnection(AppConstant.URL,AppConstant.USER,AppConstant.PASS);
+        return getPool().borrow();
+    }
+    
+    /**
+     * Metodo utilizado para obtener el pool de conexiones, creandolo la
+     * primera vez que se solicita.
+     */
+    public static DBConnectionPool getPool() throws ClassNotFoundException {
+        DBConnectionPool current = pool;
+        if ( current == null ){
+            synchronized (DBConnection.class) {
+                if ( pool == null ){
+                    //Cargamos el driver.
+                    String driver = AppConstant.DB_CLASS.isEmpty()
+                            ? SqlDialect.getInstance().getDriverClass() : AppConstant.DB_CLASS;
+                    if ( driver != null ){
+                        Class.forName(driver);
+                    }
+                    //Creamos el pool hacia la base de datos.
+                    pool = new DBConnectionPool(AppConstant.URL,AppConstant.USER,AppConstant.PASS);
+                }
+                current = pool;
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * @return el pool actual, o null si aun no se ha creado.
+     */
+    static DBConnectionPool currentPool() {
+        return pool;
+    }
+    
+    /**
+     * Metodo utilizado para cerrar el pool y sus conexiones al detener la
+     * aplicacion.
+     */
+    public static synchronized void shutdown() {
+        if ( pool != null ){
+            pool.shutdown();
+            pool = null;
+        }
+    }
+    
+    /**
+     * Metodo utilizado para cerrar el statement y devolver la conexion al
+     * pool, registrando cualquier error sin propagarlo.
+     */
+    public static void close(Statement st, Connection con) {
+        if ( st != null ){
+            try {
+                st.close();
+            } catch (SQLException ex) {
+                LOG.log(Level.SEVERE, "Error al cerrar el statement", ex);
+            }
+        }
+        if ( con != null ){
+            try {
+                con.close();
+            } catch (SQLException ex) {
+                LOG.log(Level.SEVERE, "Error al devolver la conexion al pool", ex);
+            }
         }
-        return connection;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,488 @@
+package com.cac.restfull.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.cac.restfull.webservice.AppConstant;
+
+/**
+ * Pool acotado de conexiones JDBC utilizado por {@link DBConnection}.
+ *
+ * Cada peticion toma una conexion con {@link #borrow()} y la devuelve al
+ * llamar {@link Connection#close()}. Las conexiones se validan al prestarse,
+ * se descartan al superar su tiempo de vida maximo y las que permanecen
+ * ociosas demasiado tiempo son cerradas por un hilo de mantenimiento.
+ *
+ * Cada conexion guarda ademas un cache LRU de los PreparedStatement creados
+ * con {@link Connection#prepareStatement(String)}: al cerrarlos vuelven al
+ * cache y el siguiente prepare del mismo SQL los reutiliza sin volver a
+ * enviarlos a la base de datos.
+ *
+ * @author ATORRES
+ */
+public class DBConnectionPool {
+
+    private static final Logger LOG = Logger.getLogger(DBConnectionPool.class.getName());
+
+    private final String url;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeout;
+    private final long idleTimeout;
+    private final long maxLifetime;
+    private final long validationInterval;
+    private final String validationQuery;
+    private final Properties connectionProperties;
+    private final int statementCacheSize;
+
+    /** Permisos de prestamo, uno por cada conexion que puede estar en uso. */
+    private final Semaphore permits;
+    /** Conexiones libres, la mas recientemente usada al inicio. */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    /** Conexiones fisicas abiertas, libres y en uso. */
+    private final AtomicInteger total = new AtomicInteger();
+    private final ScheduledExecutorService maintenance;
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    private volatile boolean closed = false;
+
+    public DBConnectionPool(String url, String user, String pass) {
+        this.url = url;
+        this.minSize = AppConstant.POOL_MIN_SIZE;
+        this.maxSize = Math.max(AppConstant.POOL_MAX_SIZE, 1);
+        this.borrowTimeout = AppConstant.POOL_BORROW_TIMEOUT_MS;
+        this.idleTimeout = AppConstant.POOL_IDLE_TIMEOUT_MS;
+        this.maxLifetime = AppConstant.POOL_MAX_LIFETIME_MS;
+        this.validationInterval = AppConstant.POOL_VALIDATION_INTERVAL_MS;
+        SqlDialect dialect = SqlDialect.forUrl(url);
+        this.validationQuery = AppConstant.POOL_VALIDATION_QUERY.isEmpty()
+                ? dialect.getValidationQuery() : AppConstant.POOL_VALIDATION_QUERY;
+        this.connectionProperties = dialect.getConnectionProperties(user, pass);
+        this.statementCacheSize = AppConstant.POOL_STATEMENT_CACHE_SIZE;
+        this.permits = new Semaphore(maxSize, true);
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "DBConnectionPool-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, 0,
+                AppConstant.POOL_EVICTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Metodo utilizado para tomar prestada una conexion del pool. La conexion
+     * debe cerrarse al terminar la operacion para devolverla al pool.
+     *
+     * @return conexion valida y exclusiva para quien la solicita.
+     * @throws SQLException en caso de no obtener una conexion dentro del
+     * tiempo de espera configurado o de no poder abrir una nueva.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("El pool de conexiones esta cerrado.");
+        }
+        long start = System.nanoTime();
+        try {
+            boolean acquired = permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS);
+            Metrics.getInstance().getBorrowWait().recordNanos(System.nanoTime() - start);
+            if (!acquired) {
+                throw new SQLTimeoutException("No se obtuvo una conexion del pool en "
+                        + borrowTimeout + " ms. En uso: " + getActiveCount() + "/" + maxSize);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando una conexion del pool.", ex);
+        }
+
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (isUsable(pc)) {
+                    return pc.lease();
+                }
+                destroy(pc);
+            }
+            return create().lease();
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Metodo utilizado para cerrar el pool y todas las conexiones libres. Las
+     * conexiones en uso se cierran al ser devueltas.
+     */
+    public void shutdown() {
+        closed = true;
+        maintenance.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            destroy(pc);
+        }
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getTotalCount() {
+        return total.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getStatementCacheHits() {
+        return statementHits.get();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementMisses.get();
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, connectionProperties);
+        total.incrementAndGet();
+        return new PooledConnection(raw);
+    }
+
+    private void destroy(PooledConnection pc) {
+        total.decrementAndGet();
+        try {
+            pc.raw.close();
+        } catch (SQLException ex) {
+            LOG.log(Level.FINE, "Error al cerrar una conexion descartada", ex);
+        }
+    }
+
+    private boolean isExpired(PooledConnection pc, long now) {
+        return maxLifetime > 0 && now - pc.createdAt >= maxLifetime;
+    }
+
+    /**
+     * Metodo utilizado para validar una conexion antes de prestarla. Las
+     * conexiones devueltas recientemente sin errores no se vuelven a probar.
+     */
+    private boolean isUsable(PooledConnection pc) {
+        long now = System.currentTimeMillis();
+        if (isExpired(pc, now)) {
+            return false;
+        }
+        if (!pc.suspect && now - pc.lastUsed < validationInterval) {
+            return true;
+        }
+        Statement st = null;
+        try {
+            st = pc.raw.createStatement();
+            ResultSet rs = st.executeQuery(validationQuery);
+            rs.next();
+            pc.suspect = false;
+            return true;
+        } catch (SQLException ex) {
+            LOG.log(Level.WARNING, "Conexion invalida descartada del pool", ex);
+            return false;
+        } finally {
+            if (st != null) {
+                try {
+                    st.close();
+                } catch (SQLException ex) {
+                    LOG.log(Level.FINE, "Error al cerrar el statement de validacion", ex);
+                }
+            }
+        }
+    }
+
+    private void giveBack(PooledConnection pc, boolean autoCommitChanged) {
+        try {
+            boolean broken = false;
+            if (autoCommitChanged) {
+                try {
+                    if (!pc.raw.getAutoCommit()) {
+                        pc.raw.rollback();
+                        pc.raw.setAutoCommit(true);
+                    }
+                } catch (SQLException ex) {
+                    LOG.log(Level.WARNING, "Error al restaurar el auto-commit de la conexion", ex);
+                    broken = true;
+                }
+            }
+            long now = System.currentTimeMillis();
+            if (closed || broken || isExpired(pc, now)) {
+                destroy(pc);
+            } else {
+                pc.lastUsed = now;
+                idle.offerFirst(pc);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Tarea periodica: cierra las conexiones vencidas u ociosas por encima
+     * del minimo y vuelve a completar el minimo de conexiones abiertas.
+     */
+    private void maintain() {
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext()) {
+                PooledConnection pc = it.next();
+                boolean idleTooLong = idleTimeout > 0 && now - pc.lastUsed >= idleTimeout
+                        && total.get() > minSize;
+                if ((isExpired(pc, now) || idleTooLong) && idle.remove(pc)) {
+                    destroy(pc);
+                }
+            }
+            // Se toma un permiso para no superar el maximo mientras se crea.
+            while (!closed && total.get() < minSize && permits.tryAcquire()) {
+                try {
+                    PooledConnection pc = create();
+                    pc.lastUsed = now;
+                    idle.offerLast(pc);
+                } finally {
+                    permits.release();
+                }
+            }
+        } catch (Exception ex) {
+            LOG.log(Level.WARNING, "Error en el mantenimiento del pool de conexiones", ex);
+        }
+    }
+
+    /**
+     * Conexion fisica administrada por el pool.
+     */
+    private class PooledConnection {
+
+        private final Connection raw;
+        private final long createdAt;
+        private volatile long lastUsed;
+        /** Marcada cuando una operacion fallo; obliga a validarla. */
+        private volatile boolean suspect;
+        /** Statements libres por SQL, solo los usa quien tiene la conexion. */
+        private final Map<String, PreparedStatement> statements;
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+            this.createdAt = System.currentTimeMillis();
+            this.lastUsed = createdAt;
+            this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > statementCacheSize) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        /**
+         * Metodo utilizado para reutilizar un statement del cache o crear uno
+         * nuevo. Mientras esta en uso se retira del cache, por lo que dos
+         * prepare del mismo SQL en la misma operacion obtienen statements
+         * distintos.
+         */
+        PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+            PreparedStatement statement = statements.remove(sql);
+            if (statement != null) {
+                statementHits.incrementAndGet();
+            } else {
+                statementMisses.incrementAndGet();
+                statement = raw.prepareStatement(sql);
+            }
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new StatementHandle(this, sql, statement, owner));
+        }
+
+        void release(String sql, PreparedStatement statement) {
+            if (closed || statementCacheSize <= 0) {
+                closeQuietly(statement);
+                return;
+            }
+            PreparedStatement previous = statements.put(sql, statement);
+            if (previous != null) {
+                closeQuietly(previous);
+            }
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new ConnectionHandle(this));
+        }
+    }
+
+    /**
+     * Vista prestada de una conexion. Al cerrarse devuelve la conexion al
+     * pool en lugar de cerrar la conexion fisica.
+     */
+    private class ConnectionHandle implements InvocationHandler {
+
+        private final PooledConnection pc;
+        private boolean released = false;
+        private boolean autoCommitChanged = false;
+
+        ConnectionHandle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        giveBack(pc, autoCommitChanged);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pc.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pc.raw;
+                case "setAutoCommit":
+                    autoCommitChanged = true;
+                    break;
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("La conexion ya fue devuelta al pool.");
+            }
+            if (statementCacheSize > 0 && args != null && args.length == 1
+                    && "prepareStatement".equals(method.getName())) {
+                return pc.prepare((String) args[0], (Connection) proxy);
+            }
+            try {
+                return method.invoke(pc.raw, args);
+            } catch (InvocationTargetException ex) {
+                if (ex.getCause() instanceof SQLException) {
+                    pc.suspect = true;
+                }
+                throw ex.getCause();
+            }
+        }
+    }
+
+    /**
+     * Vista de un statement del cache. Al cerrarse limpia sus parametros y
+     * vuelve al cache de la conexion en lugar de cerrarse.
+     */
+    private class StatementHandle implements InvocationHandler {
+
+        private final PooledConnection pc;
+        private final String sql;
+        private final PreparedStatement statement;
+        private final Connection owner;
+        private ResultSet resultSet;
+        private boolean released = false;
+        private boolean failed = false;
+
+        StatementHandle(PooledConnection pc, String sql, PreparedStatement statement, Connection owner) {
+            this.pc = pc;
+            this.sql = sql;
+            this.statement = statement;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        recycle();
+                    }
+                    return null;
+                case "isClosed":
+                    return released;
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached" + statement;
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("El statement ya fue cerrado.");
+            }
+            try {
+                Object result = method.invoke(statement, args);
+                if (result instanceof ResultSet) {
+                    resultSet = (ResultSet) result;
+                }
+                return result;
+            } catch (InvocationTargetException ex) {
+                if (ex.getCause() instanceof SQLException) {
+                    failed = true;
+                    pc.suspect = true;
+                }
+                throw ex.getCause();
+            }
+        }
+
+        private void recycle() {
+            try {
+                if (resultSet != null) {
+                    resultSet.close();
+                }
+                if (failed) {
+                    closeQuietly(statement);
+                    return;
+                }
+                statement.clearParameters();
+                statement.clearBatch();
+                pc.release(sql, statement);
+            } catch (SQLException ex) {
+                LOG.log(Level.FINE, "Statement descartado del cache", ex);
+                closeQuietly(statement);
+            }
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ex) {
+            LOG.log(Level.FINE, "Error al cerrar un statement del cache", ex);
+        }
+    }
+}
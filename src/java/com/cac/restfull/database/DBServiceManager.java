@@ -1,10 +1,14 @@
 package com.cac.restfull.database;
 
 import java.util.List;
+import java.util.Map;
 import javax.json.Json;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.sql.Blob;
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.Statement;
-import java.sql.Timestamp;
 import java.util.ArrayList;
 import javax.json.JsonArray;
 import javax.json.JsonObject;
@@ -13,23 +17,69 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.sql.CallableStatement;
 import java.sql.PreparedStatement;
+import java.sql.Types;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonObjectBuilder;
-import java.io.ByteArrayInputStream;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
 import com.cac.restfull.webservice.Util;
+import com.cac.restfull.webservice.AppConstant;
+import com.cac.restfull.webservice.ServiceLog;
 import javax.validation.constraints.NotNull;
 import static com.cac.restfull.database.DBConnection.getDBConnection;
-import java.sql.Types;
 
 /**
  * Clase encargada de resolver las peticiones al servidor.
  *
+ * Existe una sola instancia compartida y no guarda estado entre llamadas:
+ * cada operacion toma su propia conexion del pool y crea sus propios
+ * statements, por lo que las peticiones se ejecutan en paralelo sin
+ * sincronizacion.
+ *
  * @author Administrator
  */
 public class DBServiceManager {
 
     private static final Logger LOG = Logger.getLogger(DBServiceManager.class.getName());
 
+    private static final DBServiceManager INSTANCE = new DBServiceManager();
+
+    private final SqlTemplateCache sqlTemplates = new SqlTemplateCache(AppConstant.SQL_TEMPLATE_CACHE_SIZE);
+
+    private final RowPlan.Cache rowPlans = new RowPlan.Cache(AppConstant.SQL_TEMPLATE_CACHE_SIZE);
+
+    private final ResultCache resultCache = new ResultCache(AppConstant.RESULT_CACHE_MAX_BYTES,
+            AppConstant.RESULT_CACHE_MAX_ENTRY_BYTES, AppConstant.RESULT_CACHE_DEFAULT_TTL_MS,
+            AppConstant.RESULT_CACHE_TABLE_TTL);
+
+    private final ReadCoalescer readCoalescer = new ReadCoalescer(AppConstant.COALESCE_MAX_BYTES,
+            AppConstant.COALESCE_WAIT_MS);
+
+    private final NoOrdenTrabajoAllocator ordenesTrabajo = new NoOrdenTrabajoAllocator(
+            AppConstant.OT_SEQUENCE, AppConstant.OT_HILO_TABLE, AppConstant.OT_BLOCK_SIZE);
+
+    private DBServiceManager() {
+    }
+
+    public static DBServiceManager getInstance() {
+        return INSTANCE;
+    }
+
+    public SqlTemplateCache getSqlTemplates() {
+        return sqlTemplates;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public ReadCoalescer getReadCoalescer() {
+        return readCoalescer;
+    }
+
     /**
      * Metodo utilizado para conocer si el servidor se encuentra conectado a la
      * base de datos.
@@ -37,14 +87,16 @@ public class DBServiceManager {
      * @return true en caso de coneccion valida, false en caso contrario.
      *
      */
-    public synchronized boolean isDBConected() {
+    public boolean isDBConected() {
         // Test query.
-        String query = "select 'connected' AS DUMMY from dual";
+        String query = SqlDialect.getInstance().getHealthQuery();
+        Connection con = null;
         Statement st = null;
 
         try {
 
-            st = getDBConnection().createStatement();
+            con = getDBConnection();
+            st = con.createStatement();
             ResultSet rs = st.executeQuery(query);
 
             rs.next();
@@ -54,13 +106,7 @@ public class DBServiceManager {
         } catch (Exception e) {
             Logger.getLogger(DBConnection.class.getName()).log(Level.SEVERE, "Error al probar la consulta", e);
         } finally {
-            if (st != null) {
-                try {
-                    st.close();
-                } catch (SQLException ex) {
-                    LOG.log(Level.SEVERE, "Error al cerrar el statement", ex);
-                }
-            }
+            DBConnection.close(st, con);
         }
         return false;
     }
@@ -73,68 +119,14 @@ public class DBServiceManager {
      * @param columns columnas a buscar.
      * @throws Exception posible exception en caso de que una de las columnas no
      * exista en la Base de datos.
-     * @return string con la informacion seleccionada. Formato de la respuesta:
+     * @return resultado listo para escribirse en la respuesta. Formato de la
+     * respuesta:
      * { "tag" : "response", "status" : "true", "tableName" : "table name",
      * "rows" : JsonArray[JsonObject{"key":"value","key1":"value1"}]}
      */
-    public synchronized String getDataFromTable(String tableName, JsonArray columns) throws Exception {
-
-        //Formating columns
-        String formatedColumns = "";
-
-        for (int i = 0; i < columns.size(); i++) {
-            formatedColumns += columns.getString(i);
-
-            if (i < (columns.size() - 1)) {
-                formatedColumns += ",";
-            }
-        }
-
-        // Parametros obligatorios del query.
-        String sql = "select " + formatedColumns + " from " + tableName;
-
-        LOG.log(Level.SEVERE, "SQL {0}", sql);
-
-        PreparedStatement ps = null;
-
-        try {
-            // Conseguimos la coneccion y creamos el prepare statement
-            ps = getDBConnection().prepareStatement(sql);
-
-            //Ejecutamos el query
-            ResultSet rs = ps.executeQuery();
-
-            //Formamos el atributo rows
-            JsonArrayBuilder rows = Json.createArrayBuilder();
-            while (rs.next()) {
-                JsonObjectBuilder objBuilder = Json.createObjectBuilder();
-                for (int j = 0; j < columns.size(); j++) {
-                    objBuilder.add(columns.getString(j), rs.getString(columns.getString(j)));
-                }
-                rows.add(objBuilder.build());
-            }
-
-            JsonObjectBuilder objectToSend = Util.createJSONObjectBuilder("response", true);
-            objectToSend.add("tableName", tableName);
-            objectToSend.add("rows", rows.build());
-
-            String json = objectToSend.build().toString();
-
-            LOG.log(Level.INFO, "===============================================");
-            LOG.log(Level.INFO, "Response {0}", json);
-            LOG.log(Level.INFO, "===============================================");
-
-            return json;
-
-        } catch (Exception ex) {
-            LOG.log(Level.SEVERE, null, ex);
-            throw ex;
-        } finally {
-            if (ps != null) {
-                ps.close();
-            }
-        }
-
+    public TableResult getDataFromTable(String tableName, JsonArray columns) throws Exception {
+        return getDataFromTable(new SelectRequest(tableName, toStringArray(columns), null, null,
+                null, 0, null, AppConstant.DB_FETCH_SIZE));
     }
 
     /**
@@ -146,96 +138,290 @@ public class DBServiceManager {
      * @param whereCondition : Condicion del select, ejemplo: empresa = ?
      * @param whereValues : Valores de las condicion del select.
      * @exception Exception : Posible exception al buscar en la base de datos.
-     * @return JsonObject con la respuesta del servidor. 
+     * @return resultado listo para escribirse en la respuesta. 
      * Ejemplo del formato:
      * { "tag"       : "response",
      *     "status"    : "true",
      *     "tableName" : "table name",
      *     "rows"      : JsonArray[JsonObject{"key":"value","key1":"value1"}]}
      */
-    public synchronized String getDataFromTable(@NotNull String tableName, @NotNull JsonArray columns, String whereCondition, JsonArray whereValues) throws Exception {
+    public TableResult getDataFromTable(@NotNull String tableName, @NotNull JsonArray columns, String whereCondition, JsonArray whereValues) throws Exception {
+        return getDataFromTable(new SelectRequest(tableName, toStringArray(columns), whereCondition,
+                whereValues, null, 0, null, AppConstant.DB_FETCH_SIZE));
+    }
 
-        //Formating columns
-        String formatedColumns = "";
+    /**
+     * Metodo utilizado para buscar la informacion de una tabla, con o sin
+     * condicion y opcionalmente paginada por llave.
+     *
+     * Cuando la peticion indica pageSize se leen hasta pageSize registros
+     * ordenados por orderBy a partir del cursor after, y la respuesta incluye
+     * "nextCursor" para pedir la siguiente pagina (null en la ultima).
+     *
+     * Las tablas con TTL configurado se responden desde el {@link ResultCache}
+     * mientras la respuesta guardada este vigente. Las lecturas identicas que
+     * llegan al mismo tiempo comparten una sola consulta, ver
+     * {@link ReadCoalescer}.
+     *
+     * @param request : Peticion del cliente.
+     * @exception Exception : Posible exception al buscar en la base de datos.
+     * @return resultado listo para escribirse en la respuesta.
+     */
+    public TableResult getDataFromTable(@NotNull SelectRequest request) throws Exception {
+        return getDataFromTable(request, Long.MAX_VALUE);
+    }
 
-        for (int i = 0; i < columns.size(); i++) {
-            formatedColumns += columns.getString(i);
+    /**
+     * Metodo utilizado para leer una tabla con un tiempo limite para esperar
+     * una lectura identica en curso, ver {@link #getDataFromTable(SelectRequest)}.
+     *
+     * @param deadline fecha limite en milisegundos de la peticion.
+     */
+    TableResult getDataFromTable(@NotNull SelectRequest request, long deadline) throws Exception {
+
+        String table = request.getTableKey();
+        String key = request.getCacheKey();
+        boolean cache = resultCache.getTtl(table) > 0;
+        if (cache) {
+            byte[] cached = resultCache.get(key);
+            if (cached != null) {
+                return out -> out.write(cached);
+            }
+        }
 
-            if (i < (columns.size() - 1)) {
-                formatedColumns += ",";
+        // La version de la tabla evita compartir lecturas iniciadas antes de un insert.
+        return readCoalescer.get(key + '\u0001' + resultCache.generation(table), () -> {
+            TableResult result = request.isParallel() ? executeParallelSelect(request) : executeSelect(request);
+            return cache ? resultCache.cacheOnWrite(result, table, key) : result;
+        }, deadline);
+    }
+
+    /**
+     * Metodo utilizado para obtener la version de la respuesta de una
+     * lectura, para responder las peticiones condicionales sin leer la tabla.
+     * Solo aplica a las tablas con TTL configurado, ver
+     * {@link ResultCache#version(String, String)}, y no a las lecturas en
+     * paralelo sin orden, cuya respuesta cambia de una lectura a otra.
+     *
+     * @param request : Peticion del cliente.
+     * @return la version, o null si la lectura no la admite.
+     */
+    public TableVersion getTableVersion(@NotNull SelectRequest request) {
+        if (request.isParallel() && !request.isOrdered()) {
+            return null;
+        }
+        return resultCache.version(request.getTableKey(), request.getCacheKey());
+    }
+
+    /**
+     * Metodo utilizado para resolver varias lecturas en una sola peticion,
+     * ver {@link BatchSelect}.
+     *
+     * @param obj : Peticion con las consultas, {"queries" : JsonArray[{"id" :
+     * "id", "tableName" : ..., "columns" : ...}, n...], "timeoutMs" : 5000}.
+     * @return resultado listo para escribirse en la respuesta; las consultas
+     * se ejecutan a medida que se escribe.
+     */
+    public TableResult getDataFromTables(@NotNull JsonObject obj) {
+        return BatchSelect.fromJson(this, obj);
+    }
+
+    /**
+     * Metodo utilizado para dividir la lectura en rangos de la llave splitBy
+     * y comenzar a leerlos en paralelo, ver {@link ParallelScan}. Los limites
+     * se toman del menor y el mayor valor de la llave, en partes iguales.
+     */
+    private TableResult executeParallelSelect(SelectRequest request) throws Exception {
+
+        SqlDialect dialect = SqlDialect.getInstance();
+        String key = request.getSplitBy();
+        String boundsSql = sqlTemplates.get(() -> dialect.keyBounds(request.getTableName(), key,
+                request.getWhereCondition()), "keyBounds", request.getTableName(), key, request.getWhereCondition());
+
+        BigDecimal min = null;
+        BigDecimal max = null;
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getDBConnection();
+            ps = con.prepareStatement(boundsSql);
+            bindWhereValues(ps, 1, request.getWhereValues());
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                min = rs.getBigDecimal(1);
+                max = rs.getBigDecimal(2);
             }
+        } finally {
+            DBConnection.close(ps, con);
         }
 
-        // Parametros obligatorios del query.
-        String sql = "select " + formatedColumns + " from " + tableName;
+        int parts = min == null || max == null || min.compareTo(max) >= 0 ? 1 : request.getParallel();
+        ParallelScan.Range[] ranges = new ParallelScan.Range[parts];
+        BigDecimal step = parts == 1 ? null
+                : max.subtract(min).divide(BigDecimal.valueOf(parts), MathContext.DECIMAL64);
+        for (int i = 0; i < parts; i++) {
+            BigDecimal lower = i == 0 ? null : min.add(step.multiply(BigDecimal.valueOf(i)));
+            BigDecimal upper = i == parts - 1 ? null : min.add(step.multiply(BigDecimal.valueOf(i + 1)));
+            boolean hasLower = lower != null;
+            boolean hasUpper = upper != null;
+            String sql = sqlTemplates.get(() -> createRangeSelectSql(request, hasLower, hasUpper), "rangeSelect",
+                    request.getTableName(), request.getColumns(), request.getWhereCondition(), key,
+                    hasLower, hasUpper, request.isOrdered());
+            ranges[i] = new ParallelScan.Range(sql, lower, upper);
+        }
+        ServiceLog.log(LOG, Level.INFO, ServiceLog.SQL, () -> "SQL " + ranges[0].sql + " en " + ranges.length + " rangos");
+        return new ParallelScan(request, ranges, rowPlans).start();
+    }
 
-        // En caso de que el query tenga alguna condicion.
-        if (!whereCondition.isEmpty()) {
-            sql += " where " + whereCondition;
+    /**
+     * Metodo utilizado para formar el select de un rango de la lectura en
+     * paralelo, ver {@link SqlDialect#keyRange(String, boolean, boolean)}.
+     */
+    String createRangeSelectSql(SelectRequest request, boolean lower, boolean upper) {
+        String key = request.getSplitBy();
+        StringBuilder sql = new StringBuilder("select ");
+        sql.append(formatColumns(request.getColumns()));
+        sql.append(" from ").append(request.getTableName()).append(" where ");
+        String whereCondition = request.getWhereCondition();
+        if (whereCondition != null && !whereCondition.isEmpty()) {
+            sql.append('(').append(whereCondition).append(") and ");
         }
+        sql.append(SqlDialect.getInstance().keyRange(key, lower, upper));
+        if (request.isOrdered()) {
+            sql.append(" order by ").append(key);
+        }
+        return sql.toString();
+    }
 
-        LOG.log(Level.INFO, "SQL {0}", sql);
+    /**
+     * Metodo utilizado para ejecutar el select de la peticion y entregar el
+     * ResultSet abierto al {@link TableResultStream}, que cierra la conexion
+     * al terminar de escribir. En caso de error la conexion se libera aqui.
+     */
+    private TableResultStream executeSelect(SelectRequest request) throws Exception {
+
+        String[] keys = request.getOrderBy();
+        String sql = sqlTemplates.get(() -> createSelectSql(request), "select",
+                request.getTableName(), request.getColumns(), request.getWhereCondition(),
+                keys, request.getAfter() != null, request.isPaged());
 
+        ServiceLog.log(LOG, Level.INFO, ServiceLog.SQL, () -> "SQL " + sql);
+
+        Connection con = null;
         PreparedStatement ps = null;
 
         try {
             // Conseguimos la coneccion y creamos el prepare statement
-            ps = getDBConnection().prepareStatement(sql);
+            con = getDBConnection();
+            ps = con.prepareStatement(sql);
+            ps.setFetchSize(request.getFetchSize());
 
             //Setiamos los valores del where condition
-            if (whereValues != null) {
-                for (int i = 0; i < whereValues.size(); i++) {
-                    ps.setString(i + 1, whereValues.get(i).toString().replaceAll("\"", ""));
-                }
+            int index = bindWhereValues(ps, 1, request.getWhereValues());
+            if (request.getAfter() != null) {
+                index = KeysetCursor.bind(ps, index, request.getAfter(), keys.length);
+            }
+            if (request.isPaged()) {
+                ps.setInt(index, request.getPageSize() + 1);
             }
 
             //Ejecutamos el query
+            long start = System.nanoTime();
             ResultSet rs = ps.executeQuery();
+            Metrics.getInstance().getStatementExecution().recordNanos(System.nanoTime() - start);
 
-            //Formamos el atributo rows
-            JsonArrayBuilder rows = Json.createArrayBuilder();
-            while (rs.next()) {
-                JsonObjectBuilder objBuilder = Json.createObjectBuilder();
-                for (int j = 0; j < columns.size(); j++) {
-                    if (columns.getString(j).contains("fecha")) {
-                        long lg = rs.getDate(columns.getString(j)).getTime();
-                        objBuilder.add(columns.getString(j), String.valueOf(lg));
-                    } else {
-                        String value = rs.getString(columns.getString(j));
-                        objBuilder.add(columns.getString(j), value == null ? " " : value);
-                    }
-                }
-                rows.add(objBuilder.build());
-            }
+            return new TableResultStream(request, sql, rowPlans, con, ps, rs);
 
-            JsonObjectBuilder objectToSend = Util.createJSONObjectBuilder("response", true);
-            objectToSend.add("tableName", tableName);
-            objectToSend.add("rows", rows.build());
+        } catch (Exception ex) {
+            LOG.log(Level.SEVERE, null, ex);
+            DBConnection.close(ps, con);
+            throw ex;
+        }
+    }
 
-            String json = objectToSend.build().toString();
+    /**
+     * Metodo utilizado para formar el select de la peticion. Se agregan las
+     * llaves de orderBy que no fueron solicitadas para poder formar el cursor.
+     */
+    String createSelectSql(SelectRequest request) {
 
-            LOG.log(Level.INFO, "===============================================");
-            LOG.log(Level.INFO, "Response {0}", json);
-            LOG.log(Level.INFO, "===============================================");
+        String[] keys = request.getOrderBy();
 
-            return json;
+        // Parametros obligatorios del query.
+        StringBuilder sql = new StringBuilder("select ");
+        sql.append(formatColumns(request.getColumns()));
+        for (String key : keys) {
+            if (!contains(request.getColumns(), key)) {
+                sql.append(',').append(key);
+            }
+        }
+        sql.append(" from ").append(request.getTableName());
 
-        } catch (Exception ex) {
-            LOG.log(Level.SEVERE, null, ex);
-            throw ex;
-        } finally {
-            if (ps != null) {
-                ps.close();
+        // En caso de que el query tenga alguna condicion.
+        String whereCondition = request.getWhereCondition();
+        boolean hasWhere = whereCondition != null && !whereCondition.isEmpty();
+        if (hasWhere) {
+            sql.append(" where ");
+            sql.append(request.getAfter() != null ? "(" + whereCondition + ")" : whereCondition);
+        }
+        if (request.getAfter() != null) {
+            sql.append(hasWhere ? " and " : " where ").append(KeysetCursor.condition(keys));
+        }
+        if (keys.length > 0) {
+            sql.append(" order by ").append(formatColumns(keys));
+        }
+        if (request.isPaged()) {
+            // Se lee un registro adicional para saber si existe otra pagina.
+            return SqlDialect.getInstance().limit(sql.toString());
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Metodo utilizado para formar la lista de columnas separadas por coma.
+     */
+    static String formatColumns(String[] columns) {
+        StringBuilder formatedColumns = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                formatedColumns.append(',');
+            }
+            formatedColumns.append(columns[i]);
+        }
+        return formatedColumns.toString();
+    }
+
+    private static boolean contains(String[] columns, String column) {
+        for (String c : columns) {
+            if (c.equalsIgnoreCase(column)) {
+                return true;
             }
         }
+        return false;
+    }
+
+    private static String[] toStringArray(JsonArray array) {
+        String[] values = new String[array.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.getString(i);
+        }
+        return values;
     }
 
     /**
      * Metodo utilizado para permitir insertar informacion en la base de datos 
      * de oracle.
      * 
-     * @return Respuesta del servidor.
-     * @exception Exception Posible error al insertar en la base de datos.
+     * Los registros se agrupan por sentencia (tabla y columnas), en el orden
+     * en que aparece cada tabla, y se envian en lotes de
+     * {@link AppConstant#DB_BATCH_SIZE} dentro de una sola transaccion: se
+     * insertan todos o ninguno.
+     * 
+     * @return Respuesta del servidor. {"tag":"response","status":true,
+     * "inserted":n} o, en caso de error, {"tag":"response","status":false,
+     * "error":"mensaje","errors":JsonArray[{"row":i,"error":"mensaje"}]} con
+     * la posicion en rows de cada registro rechazado.
+     * @exception Exception Posible error al conectarse a la base de datos.
      * @param obj : Informacion a insertar en la base datos.
      * Formato del objeto.
      * {"rows" : JsonArray[JsonObject {"tableName" : "table name", "columns":
@@ -248,57 +434,242 @@ public class DBServiceManager {
         JsonArray rows = obj.getJsonArray("rows");
 
         if (rows == null) {
-            throw new Exception("Json Malformed." + rows.toString());
-        } else {
-            //Iterating Json.
-            for (int i = 0; i < rows.size(); i++) {
-                //registros
-                JsonObject row = rows.getJsonObject(i);
-
-                //Formando Registros
-                String sql = "insert into " + row.getString("tableName");
-                sql += " (";
-
-                // working with columns
-                JsonArray columns = row.getJsonArray("columns");
-                for (int j = 0; j < columns.size(); j++) {
-                    sql += columns.getString(j);
-                    if (j < (columns.size() - 1)) {
-                        sql += ",";
-                    }
+            throw new Exception("Json Malformed." + obj.toString());
+        }
+
+        // Agrupamos los registros por sentencia, validando los valores antes
+        // de tocar la base de datos.
+        Map<String, List<InsertBatchWriter.Row>> statements = new LinkedHashMap<>();
+        JsonArrayBuilder errors = Json.createArrayBuilder();
+        int errorCount = 0;
+
+        for (int i = 0; i < rows.size(); i++) {
+            try {
+                InsertBatchWriter.Row row = createInsertRow(i, JsonRow.fromJson(rows.getJsonObject(i)));
+                List<InsertBatchWriter.Row> statementRows = statements.get(row.sql);
+                if (statementRows == null) {
+                    statementRows = new ArrayList<>();
+                    statements.put(row.sql, statementRows);
                 }
-                sql += " ) values ( ";
+                statementRows.add(row);
+            } catch (Exception ex) {
+                errors.add(createRowError(i, ex));
+                errorCount++;
+            }
+        }
 
-                // working with values
-                JsonArray values = row.getJsonArray("values");
-                List<WrapperValues> detailsValues = new ArrayList<>();
-                for (int j = 0; j < values.size(); j++) {
+        if (errorCount > 0) {
+            return createInsertError(errorCount + " registros con formato invalido.", errors);
+        }
 
-                    JsonObject detailValuePair = values.getJsonObject(j);
-                    WrapperValues detailValue = new WrapperValues();
-                    detailValue.setSortField(j + 1);
-                    detailValue.setFieldValue(detailValuePair.getString("value"));
-                    detailValue.setFieldType(getFiledTypeFromString(detailValuePair.getString("type")));
+        return executeInsert(writer -> {
+            for (List<InsertBatchWriter.Row> statementRows : statements.values()) {
+                for (InsertBatchWriter.Row row : statementRows) {
+                    writer.add(row);
+                }
+            }
+        });
+    }
 
-                    detailsValues.add(detailValue);
+    /**
+     * Metodo utilizado para insertar los registros recibidos en el cuerpo de
+     * la peticion, con el mismo formato de {@link #insertDataIntoTable(JsonObject)}.
+     *
+     * El documento se lee con un {@link JsonParser}: cada registro se agrega
+     * al lote en cuanto se termina de leer, sin construir el arbol completo,
+     * por lo que la memoria usada no depende de la cantidad de registros.
+     * Los registros se envian en el orden recibido y todo se ejecuta en una
+     * sola transaccion; al primer registro invalido se hace rollback y se
+     * indica su posicion en rows.
+     *
+     * @param body : Cuerpo de la peticion en UTF-8.
+     * @exception Exception Posible error al conectarse a la base de datos o
+     * documento sin el arreglo rows.
+     */
+    public String insertDataIntoTable(InputStream body) throws Exception {
 
-                    sql += "?";
-                    if (j < (values.size() - 1)) {
-                        sql += ",";
-                    }
+        return executeInsert(writer -> {
+            JsonParser parser = Json.createParser(body);
+            try {
+                if (JsonRow.seek(parser, "rows") != Event.START_ARRAY) {
+                    throw new Exception("Json Malformed. Se esperaba el arreglo rows.");
+                }
+                int index = 0;
+                Event event;
+                while ((event = parser.next()) != Event.END_ARRAY) {
+                    writer.setCurrentRow(index);
+                    JsonRow.expect(parser, event, Event.START_OBJECT);
+                    writer.add(createInsertRow(index++, JsonRow.read(parser)));
                 }
+            } finally {
+                parser.close();
+            }
+        });
+    }
+
+    /**
+     * Metodo utilizado para la carga masiva de registros en formato NDJSON,
+     * un registro por linea con el formato de los elementos de rows en
+     * {@link #insertDataIntoTable(JsonObject)}.
+     *
+     * A diferencia de insertDataIntoTable, los lotes se confirman por
+     * separado y los registros invalidos se rechazan sin detener la carga.
+     * Ver {@link BulkInsertPipeline}.
+     *
+     * @param body : Cuerpo de la peticion en UTF-8.
+     * @return Respuesta del servidor. {"tag":"response","status":true,
+     * "received":n,"inserted":n,"rejected":n,"elapsedMs":ms,
+     * "rowsPerSecond":n,"errors":JsonArray[{"line":i,"error":"mensaje"}]}
+     */
+    public String bulkInsert(InputStream body) throws Exception {
+
+        BulkInsertPipeline pipeline = new BulkInsertPipeline(this::createInsertRow,
+                Math.min(AppConstant.BULK_WRITERS, AppConstant.POOL_MAX_SIZE),
+                AppConstant.BULK_QUEUE_SIZE, AppConstant.DB_BATCH_SIZE, AppConstant.BULK_MAX_ERRORS);
+        pipeline.run(body);
+        invalidate(pipeline.getTables());
+
+        LOG.log(Level.INFO, "Carga masiva: {0} registros insertados, {1} rechazados en {2} ms",
+                new Object[]{pipeline.getInserted(), pipeline.getRejected(), pipeline.getElapsed()});
 
-                sql += " )";
+        Exception failure = pipeline.getFailure();
+        JsonObjectBuilder response = Util.createJSONObjectBuilder("response", failure == null);
+        if (failure != null) {
+            response.add("error", String.valueOf(failure.getMessage()));
+        }
+        response.add("received", pipeline.getReceived());
+        response.add("inserted", pipeline.getInserted());
+        response.add("rejected", pipeline.getRejected());
+        response.add("elapsedMs", pipeline.getElapsed());
+        response.add("rowsPerSecond", pipeline.getInserted() * 1000 / Math.max(pipeline.getElapsed(), 1));
+
+        JsonArrayBuilder errors = Json.createArrayBuilder();
+        synchronized (pipeline.getErrors()) {
+            for (BulkInsertPipeline.RowError error : pipeline.getErrors()) {
+                errors.add(Json.createObjectBuilder()
+                        .add("line", error.line)
+                        .add("error", error.error));
+            }
+        }
+        response.add("errors", errors);
+        return response.build().toString();
+    }
+
+    /**
+     * Metodo utilizado para ejecutar los inserts de una peticion en una sola
+     * transaccion y formar la respuesta.
+     */
+    private String executeInsert(InsertSource source) throws Exception {
+
+        Connection con = null;
+        InsertBatchWriter writer = null;
+
+        try {
+            con = getDBConnection();
+            con.setAutoCommit(false);
+            writer = new InsertBatchWriter(con, AppConstant.DB_BATCH_SIZE);
 
-                //list of values
-                LOG.log(Level.SEVERE, "SQL {0}", sql);
+            source.writeTo(writer);
+            int inserted = writer.finish();
 
-                insertDataIntoTable(sql, detailsValues);
+            con.commit();
+            writer.recordCommitted();
+            invalidate(writer.getTables());
 
+            ServiceLog.log(LOG, Level.INFO, ServiceLog.ROWS, () -> "Registros creados " + inserted);
+
+            JsonObjectBuilder response = Util.createJSONObjectBuilder("response", true);
+            response.add("inserted", inserted);
+            return response.build().toString();
+
+        } catch (Exception ex) {
+            LOG.log(Level.SEVERE, "Ocurrio un error al insertDataIntoTable", ex);
+            rollback(con);
+            if (writer == null || writer.getCurrentRow() < 0) {
+                throw ex;
+            }
+            JsonArrayBuilder errors = Json.createArrayBuilder();
+            errors.add(createRowError(writer.getCurrentRow(), ex));
+            return createInsertError("No se inserto ningun registro.", errors);
+        } finally {
+            if (writer != null) {
+                writer.close();
             }
-            return Util.createJSON("response", true);
+            DBConnection.close(null, con);
+        }
+    }
+
+    /**
+     * Metodo utilizado para convertir un registro de la peticion en el insert
+     * y los valores a enviar, validando el tipo de cada valor.
+     */
+    private InsertBatchWriter.Row createInsertRow(int index, JsonRow row) throws Exception {
+        String sql = createInsertSql(row.tableName, row.columns, row.values.length);
+        List<WrapperValues> detailsValues = new ArrayList<>();
+        for (int j = 0; j < row.values.length; j++) {
+            WrapperValues detailValue = new WrapperValues();
+            detailValue.setSortField(j + 1);
+            detailValue.setFieldValue(row.values[j]);
+            detailValue.setFieldType(getFiledTypeFromString(row.types[j]));
+            detailsValues.add(detailValue);
         }
+        return new InsertBatchWriter.Row(index, ResultCache.tableKey(row.tableName), sql, detailsValues);
+    }
+
+    /**
+     * Metodo utilizado para obtener el insert de una tabla desde el cache de
+     * SQL, formandolo la primera vez.
+     * ejemplo: insert into tableName (campo1,campo2 ) values ( ?,? )
+     */
+    private String createInsertSql(String tableName, String[] columns, int valueCount) {
+        return sqlTemplates.get(() -> buildInsertSql(tableName, columns, valueCount),
+                "insert", tableName, columns, valueCount);
+    }
 
+    private String buildInsertSql(String tableName, String[] columns, int valueCount) {
+        StringBuilder sql = new StringBuilder("insert into ").append(tableName).append(" (");
+        sql.append(formatColumns(columns));
+        sql.append(" ) values ( ");
+        for (int j = 0; j < valueCount; j++) {
+            if (j > 0) {
+                sql.append(',');
+            }
+            sql.append('?');
+        }
+        return sql.append(" )").toString();
+    }
+
+    /**
+     * Metodo utilizado para descartar del cache las respuestas de las tablas
+     * modificadas.
+     */
+    private void invalidate(Set<String> tables) {
+        for (String table : tables) {
+            resultCache.invalidate(table);
+        }
+    }
+
+    private void rollback(Connection con) {
+        if (con != null) {
+            try {
+                con.rollback();
+            } catch (SQLException ex) {
+                LOG.log(Level.SEVERE, "Error al hacer rollback", ex);
+            }
+        }
+    }
+
+    private JsonObjectBuilder createRowError(int row, Exception ex) {
+        return Json.createObjectBuilder()
+                .add("row", row)
+                .add("error", String.valueOf(ex.getMessage()));
+    }
+
+    private String createInsertError(String errorMsj, JsonArrayBuilder errors) {
+        JsonObjectBuilder response = Util.createJSONObjectBuilder("response", false);
+        response.add("error", errorMsj);
+        response.add("errors", errors);
+        return response.build().toString();
     }
 
     /**
@@ -307,8 +678,10 @@ public class DBServiceManager {
      * @param fieldType : Tipo de dato a convertir.
      * @return Tipo de dato segun el enum de FieldType.
      */
-    private FieldType getFiledTypeFromString(String fieldType) throws Exception {
-        if (fieldType.equalsIgnoreCase(FieldType.DATE.toString())) {
+    static FieldType getFiledTypeFromString(String fieldType) throws Exception {
+        if (fieldType == null) {
+            throw new Exception("Unsupported Value: " + fieldType);
+        } else if (fieldType.equalsIgnoreCase(FieldType.DATE.toString())) {
             return FieldType.DATE;
         } else if (fieldType.equalsIgnoreCase(FieldType.STRING.toString())) {
             return FieldType.STRING;
@@ -324,82 +697,123 @@ public class DBServiceManager {
     }
 
     /**
-     * Metodo utilizado para insertar un registro en la base de datos.
-     * 
-     * @param sql Query para insert la infomacion 
-     * ejemplo: insert into tableName(campo1, campo2) values (?,?)
-     * @param values listado des de valores a insertar. Estos parametro seran 
-     * reemplazados por los ?.
-     * @exception SQLException Posible error al insertar en la base de datos.
+     * Metodo utilizado para setear los valores del where condition, como
+     * texto, a partir de la posicion indicada.
+     *
+     * @return posicion del siguiente parametro.
      */
-    private synchronized void insertDataIntoTable(String sql, List<WrapperValues> values) throws SQLException {
+    static int bindWhereValues(PreparedStatement ps, int index, JsonArray whereValues) throws SQLException {
+        if (whereValues != null) {
+            for (int i = 0; i < whereValues.size(); i++) {
+                ps.setString(index++, whereValues.get(i).toString().replaceAll("\"", ""));
+            }
+        }
+        return index;
+    }
 
-        PreparedStatement preparedStatement = null;
+    //==========================================================================
+    // METODOS PARA CARGAR Y DESCARGAR CAMPOS BLOB
+    //==========================================================================
+    /**
+     * Metodo utilizado para guardar el cuerpo de la peticion en un campo BLOB
+     * del registro indicado. Los bytes pasan del cuerpo al driver a medida que
+     * se leen; con encoding base64 se decodifican en el camino. El update se
+     * confirma solo si la condicion corresponde a un registro; si corresponde
+     * a varios se hace rollback y se responde con error.
+     *
+     * @param request : Tabla, columna y condicion del registro.
+     * @param body : Contenido del campo.
+     * @param length : Tamano en bytes del contenido ya decodificado, -1 si no
+     * se conoce.
+     */
+    public String uploadBlob(BlobRequest request, InputStream body, long length) throws Exception {
 
+        SqlDialect dialect = SqlDialect.getInstance();
+        if (length < 0 && !dialect.supportsUnknownLengthStreams()) {
+            throw new IllegalArgumentException("Se requiere el tamano del archivo: Content-Length, "
+                    + "o length cuando se envia en base64.");
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("El archivo supera el tamano maximo soportado.");
+        }
+
+        String sql = "update " + request.getTableName() + " set " + request.getColumn()
+                + " = ? where " + request.getWhereCondition();
+        InputStream in = request.isBase64() ? Util.decodeBase64(body) : body;
+
+        Connection con = null;
+        PreparedStatement ps = null;
         try {
-            preparedStatement = getDBConnection().prepareStatement(sql);
-
-            for (WrapperValues wv : values) {
-                switch (wv.getFieldType()) {
-                    case INTEGER:
-                        if ( !wv.getFieldValue().equalsIgnoreCase("null") ){
-                            preparedStatement.setInt(wv.getSortField(), Integer.parseInt(wv.getFieldValue()));
-                        } else {
-                            preparedStatement.setNull(wv.getSortField(), Types.INTEGER);
-                        }
-                        break;
-                    case STRING:
-                        if ( !wv.getFieldValue().equalsIgnoreCase("null") ){
-                            preparedStatement.setString(wv.getSortField(), wv.getFieldValue());
-                        } else {
-                            preparedStatement.setNull(wv.getSortField(), Types.VARCHAR);
-                        }
-                        break;
-                    case DATE:
-                        // always is long, must convert long to timeestamp
-                        String cadena = wv.getFieldValue();
-                        if ( !cadena.equalsIgnoreCase("null") ) {
-                            Long valor = Long.parseLong(cadena);
-                            Timestamp tiempo = new Timestamp(valor);
-                            preparedStatement.setTimestamp(wv.getSortField(), tiempo);
-                        } else {
-                            preparedStatement.setNull(wv.getSortField(),Types.DATE);
-                        }
-                        break;
-                    case FLOAT:
-                        if ( !wv.getFieldValue().equalsIgnoreCase("null") ) {
-                            preparedStatement.setFloat(wv.getSortField(), Float.parseFloat(wv.getFieldValue()));
-                        } else {
-                            preparedStatement.setNull(wv.getSortField(), Types.FLOAT);
-                        }
-                        break;
-                    case BLOB:
-                        if ( wv.getFieldValue().equalsIgnoreCase("null") ) {
-                            byte[] byteArray = Util.decodeImage(wv.getFieldValue());
-                            preparedStatement.setBinaryStream(wv.getSortField(), new ByteArrayInputStream(byteArray), byteArray.length);
-                        } else {
-                            preparedStatement.setNull(wv.getSortField(), Types.BLOB);
-                        }
-                        break;
-                    default:
-                        throw new SQLException("Unsupported type of field. Type: " + wv.getFieldType() + " Value: " + wv.getFieldValue());
-                }
+            con = getDBConnection();
+            con.setAutoCommit(false);
+            ps = con.prepareStatement(sql);
+            if (length >= 0) {
+                ps.setBinaryStream(1, in, (int) length);
+            } else {
+                ps.setBinaryStream(1, in);
             }
+            bindWhereValues(ps, 2, request.getWhereValues());
 
-            //execute sql
-            int result = preparedStatement.executeUpdate();
+            long start = System.nanoTime();
+            int updated = ps.executeUpdate();
+            Metrics.getInstance().getStatementExecution().recordNanos(System.nanoTime() - start);
 
-            LOG.log(Level.INFO, "==============================================");
-            LOG.log(Level.INFO, "Registros creados {0}", preparedStatement.getUpdateCount());
-            LOG.log(Level.INFO, "==============================================");
+            if (updated != 1) {
+                rollback(con);
+                return Util.createJSON("response", false, updated == 0
+                        ? "No se encontro el registro indicado."
+                        : "La condicion corresponde a " + updated + " registros, debe identificar uno solo.");
+            }
+            con.commit();
+            resultCache.invalidate(ResultCache.tableKey(request.getTableName()));
 
-        }  catch (Exception ex) {
-            LOG.log(Level.SEVERE, "Ocurrio un error al insertDataIntoTable", ex);
-            throw new SQLException(ex);
+            JsonObjectBuilder response = Util.createJSONObjectBuilder("response", true);
+            response.add("updated", updated);
+            if (length >= 0) {
+                response.add("bytes", length);
+            }
+            return response.build().toString();
         } finally {
-            if (preparedStatement != null) {
-                preparedStatement.close();
+            DBConnection.close(ps, con);
+        }
+    }
+
+    /**
+     * Metodo utilizado para leer un campo BLOB del registro indicado. La
+     * conexion queda abierta hasta que se escribe el contenido, ver
+     * {@link BlobContent}.
+     *
+     * @param request : Tabla, columna y condicion del registro.
+     * @param range : Encabezado Range de la peticion, puede ser null.
+     * @return contenido listo para escribirse, o null si el registro no existe
+     * o el campo es nulo.
+     */
+    public BlobContent downloadBlob(BlobRequest request, String range) throws Exception {
+
+        String sql = "select " + request.getColumn() + " from " + request.getTableName()
+                + " where " + request.getWhereCondition();
+
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getDBConnection();
+            ps = con.prepareStatement(sql);
+            bindWhereValues(ps, 1, request.getWhereValues());
+
+            long start = System.nanoTime();
+            ResultSet rs = ps.executeQuery();
+            Metrics.getInstance().getStatementExecution().recordNanos(System.nanoTime() - start);
+
+            Blob blob = rs.next() ? rs.getBlob(1) : null;
+            if (blob == null) {
+                rs.close();
+                DBConnection.close(ps, con);
+                return null;
             }
+            return new BlobContent(con, ps, rs, blob, request.getContentType(), range);
+        } catch (Exception ex) {
+            DBConnection.close(ps, con);
+            throw ex;
         }
     }
 
@@ -414,83 +828,177 @@ public class DBServiceManager {
         JsonObject parametros = obj.getJsonObject("parametros");
 
         if (encabezado == null || detalle == null) {
-            throw new Exception("Json Malformed." + encabezado.toString());
-        } else {
-            
-            int empresa, area, tipoOT;
-            empresa = Integer.parseInt(parametros.getString("empresa"));
-            area    = Integer.parseInt(parametros.getString("area"));
-            tipoOT  = Integer.parseInt(parametros.getString("tipo_ot"));
-            
-            String noOrdenTrabajo = getNoOrdenTrabajo(empresa);
-            String formatoOrdenTrabajo = getFormatoOrdenTrabajo(empresa,
+            throw new Exception("Json Malformed." + obj.toString());
+        }
+
+        OrdenTrabajo orden = new OrdenTrabajo();
+        orden.encabezado = JsonRow.fromJson(encabezado);
+        for (int i = 0; i < detalle.size(); i++) {
+            orden.detalle.add(JsonRow.fromJson(detalle.getJsonObject(i)));
+        }
+        if (adjuntos != null) {
+            orden.adjuntos = new ArrayList<>();
+            for (int i = 0; i < adjuntos.size(); i++) {
+                orden.adjuntos.add(JsonRow.fromJson(adjuntos.getJsonObject(i)));
+            }
+        }
+        orden.empresa = parametros.getString("empresa");
+        orden.area    = parametros.getString("area");
+        orden.tipoOT  = parametros.getString("tipo_ot");
+
+        return insertOrdenTrabajo(orden);
+    }
+
+    /**
+     * Metodo utilizado para insertar la orden de trabajo recibida en el
+     * cuerpo de la peticion, con el mismo formato de
+     * {@link #insertOrdenTrabajo(JsonObject)}. Los registros se leen con un
+     * {@link JsonParser}, sin construir el arbol del documento.
+     *
+     * @param body : Cuerpo de la peticion en UTF-8.
+     */
+    public String insertOrdenTrabajo(InputStream body) throws Exception {
+
+        OrdenTrabajo orden = new OrdenTrabajo();
+        JsonParser parser = Json.createParser(body);
+        try {
+            JsonRow.expect(parser, parser.next(), Event.START_OBJECT);
+            Event event;
+            while ((event = parser.next()) != Event.END_OBJECT) {
+                String key = parser.getString();
+                event = parser.next();
+                switch (key) {
+                    case "encabezado":
+                        JsonRow.expect(parser, event, Event.START_OBJECT);
+                        orden.encabezado = JsonRow.read(parser);
+                        break;
+                    case "detalle":
+                        orden.detalle = JsonRow.readArray(parser, event);
+                        break;
+                    case "adjuntos":
+                        orden.adjuntos = JsonRow.readArray(parser, event);
+                        break;
+                    case "parametros":
+                        Map<String, String> parametros = JsonRow.readFields(parser, event);
+                        orden.empresa = parametros.get("empresa");
+                        orden.area    = parametros.get("area");
+                        orden.tipoOT  = parametros.get("tipo_ot");
+                        break;
+                    default:
+                        JsonRow.skip(parser, event);
+                        break;
+                }
+            }
+        } finally {
+            parser.close();
+        }
+
+        if (orden.encabezado == null || orden.detalle == null) {
+            throw new Exception("Json Malformed. Se esperaba encabezado y detalle.");
+        }
+        return insertOrdenTrabajo(orden);
+    }
+
+    /**
+     * Metodo utilizado para insertar la orden de trabajo en una sola
+     * transaccion: el encabezado, el detalle y los adjuntos se insertan todos
+     * o ninguno. Los registros de una misma tabla se envian en un solo lote.
+     */
+    private String insertOrdenTrabajo(OrdenTrabajo orden) throws Exception {
+
+        int empresa, area, tipoOT;
+        empresa = Integer.parseInt(orden.empresa);
+        area    = Integer.parseInt(orden.area);
+        tipoOT  = Integer.parseInt(orden.tipoOT);
+
+        String noOrdenTrabajo = getNoOrdenTrabajo(empresa);
+
+        Connection con = null;
+        InsertBatchWriter writer = null;
+
+        try {
+            con = getDBConnection();
+            con.setAutoCommit(false);
+
+            // El correlativo se calcula en la misma transaccion, de modo que
+            // se descarta junto con la orden en caso de error.
+            String formatoOrdenTrabajo = getFormatoOrdenTrabajo(con, empresa,
                     area, tipoOT);
-            crearInsertOrdenTrabajo(encabezado, noOrdenTrabajo, formatoOrdenTrabajo);
-            for (int i = 0; i < detalle.size(); i++) {
-                crearInsertOrdenTrabajo(detalle.getJsonObject(i),
-                        noOrdenTrabajo, formatoOrdenTrabajo);
+
+            writer = new InsertBatchWriter(con, AppConstant.DB_BATCH_SIZE);
+            int index = 0;
+            writer.add(crearInsertOrdenTrabajo(index++, orden.encabezado,
+                    noOrdenTrabajo, formatoOrdenTrabajo));
+            for (JsonRow row : orden.detalle) {
+                writer.add(crearInsertOrdenTrabajo(index++, row,
+                        noOrdenTrabajo, formatoOrdenTrabajo));
             }
-            if (adjuntos != null) {
-                for (int i = 0; i < detalle.size(); i++) {
-                    crearInsertOrdenTrabajo(adjuntos.getJsonObject(i),
-                            noOrdenTrabajo, formatoOrdenTrabajo);
+            if (orden.adjuntos != null) {
+                for (JsonRow row : orden.adjuntos) {
+                    writer.add(crearInsertOrdenTrabajo(index++, row,
+                            noOrdenTrabajo, formatoOrdenTrabajo));
                 }
             }
+            int inserted = writer.finish();
+
+            con.commit();
+            writer.recordCommitted();
+            invalidate(writer.getTables());
+
+            ServiceLog.log(LOG, Level.INFO, ServiceLog.ROWS,
+                    () -> "Orden de trabajo " + noOrdenTrabajo + ", registros creados " + inserted);
+
             JsonObjectBuilder response = Util.createJSONObjectBuilder("response", true);
             response.add("noOrdenTrabajo", noOrdenTrabajo);
             response.add("correlativo_ot", formatoOrdenTrabajo);
 
             return response.build().toString();
+
+        } catch (Exception ex) {
+            LOG.log(Level.SEVERE, "Ocurrio un error al insertOrdenTrabajo", ex);
+            rollback(con);
+            throw ex;
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+            DBConnection.close(null, con);
         }
     }
 
     /**
-     * Metodo utilizado para convertir un Json en un insert de oracle. El
-     * JsonObject debe tener el siguiente formato. JsonObject {
+     * Metodo utilizado para convertir un registro de la orden en un insert de
+     * oracle. El registro debe tener el siguiente formato. JsonObject {
      * tableName:"ma_maestro_orden_trabajo", columns : JsonArray[id_empresa,
      * id_periodo,...], values :
      * JsonArray[JsonObject{"type":"INTEGER","VALUE":"value"}] }
      *
-     * @param obj : JsonObject con el formato indicado, con los datos y la tabla
+     * @param index : Posicion del registro en la orden.
+     * @param row : Registro con el formato indicado, con los datos y la tabla
      * a insertar.
-     * @param campos: Campos a reemplazar con nombre y valor.
-     * @return Mapa con los objetos necesarios para realizar el insert, SQL y
-     * valores.
+     * @param ordenTrabajo : Numero de orden que reemplaza no_orden_trabajo.
+     * @param formatoOrdeTrabajo : Correlativo que reemplaza correlativo_ot.
+     * @return Registro listo para agregarse al lote.
      */
-    private void crearInsertOrdenTrabajo(JsonObject obj, String ordenTrabajo, String formatoOrdeTrabajo) throws Exception {
-        
-        LOG.log(Level.SEVERE,"=============================================");
-        LOG.log(Level.SEVERE,"JSON: "+obj.toString());
-        LOG.log(Level.SEVERE,"=============================================");
-        
-        // Formando Registros
-        String sql = "insert into " + obj.getString("tableName");
-        sql += " (";
+    private InsertBatchWriter.Row crearInsertOrdenTrabajo(int index, JsonRow row, String ordenTrabajo, String formatoOrdeTrabajo) throws Exception {
 
         int noOrdenTrabajo = 0;
         int correlativoOT = 0;
 
         // Working with columns
-        JsonArray columns = obj.getJsonArray("columns");
-        for (int j = 0; j < columns.size(); j++) {
-            sql += columns.getString(j);
-            if (columns.getString(j).equalsIgnoreCase("no_orden_trabajo")) {
+        String[] columns = row.columns;
+        for (int j = 0; j < columns.length; j++) {
+            if (columns[j].equalsIgnoreCase("no_orden_trabajo")) {
                 noOrdenTrabajo = j;
-            } else if (columns.getString(j).equalsIgnoreCase("correlativo_ot")) {
+            } else if (columns[j].equalsIgnoreCase("correlativo_ot")) {
                 correlativoOT = j;
             }
-            if (j < (columns.size() - 1)) {
-                sql += ",";
-            }
         }
-        sql += " ) values ( ";
 
         // working with values
-        JsonArray values = obj.getJsonArray("values");
         List<WrapperValues> detailsValues = new ArrayList<>();
-        for (int j = 0; j < values.size(); j++) {
+        for (int j = 0; j < row.values.length; j++) {
 
-            JsonObject detailValuePair = values.getJsonObject(j);
             WrapperValues detailValue = new WrapperValues();
             detailValue.setSortField(j + 1);
             if (noOrdenTrabajo > 0 && j == noOrdenTrabajo) {
@@ -498,50 +1006,40 @@ public class DBServiceManager {
             } else if (correlativoOT > 0 && correlativoOT == j) {
                 detailValue.setFieldValue(formatoOrdeTrabajo);
             } else {
-                detailValue.setFieldValue(detailValuePair.getString("value"));
+                detailValue.setFieldValue(row.values[j]);
             }
-            detailValue.setFieldType(getFiledTypeFromString(detailValuePair.getString("type")));
+            detailValue.setFieldType(getFiledTypeFromString(row.types[j]));
 
             detailsValues.add(detailValue);
-
-            sql += "?";
-            if (j < (values.size() - 1)) {
-                sql += ",";
-            }
         }
 
-        sql += " )";
-        
-        LOG.log(Level.SEVERE,"SQL : "+sql);
-        
-        insertDataIntoTable(sql, detailsValues);
+        // Formando Registros
+        String sql = createInsertSql(row.tableName, columns, row.values.length);
+        ServiceLog.log(LOG, Level.FINE, ServiceLog.SQL, () -> "Registro: " + row.tableName + " SQL : " + sql);
+
+        return new InsertBatchWriter.Row(index, ResultCache.tableKey(row.tableName), sql, detailsValues);
     }
 
+    /**
+     * Metodo utilizado para obtener el numero de la nueva orden de trabajo,
+     * ver {@link NoOrdenTrabajoAllocator}.
+     */
     private String getNoOrdenTrabajo(int empresa) throws Exception {
-        PreparedStatement preparedStatement = null;
-
-        String sql = "SELECT NVL(MAX(NVL(NO_ORDEN_TRABAJO,0)),0) + 1 CORRELATIVO \n"
-                + "FROM MAQUINARIAN.MA_MAESTRO_ORDEN_TRABAJO\n"
-                + "WHERE ID_EMPRESA = " + empresa;
         try {
-            preparedStatement = getDBConnection().prepareCall(sql);
-            ResultSet result = preparedStatement.executeQuery();
-            result.next();
-
-            return result.getString("CORRELATIVO");
-
+            return String.valueOf(ordenesTrabajo.next(empresa));
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Ocurrio un error al getNoOrdenTrabajo", e);
             throw new SQLException(e);
         }
     }
 
-    private String getFormatoOrdenTrabajo(int empresa, int area, int tipoOt) throws Exception {
+    private String getFormatoOrdenTrabajo(Connection con, int empresa, int area, int tipoOt) throws Exception {
+        CallableStatement function = null;
         try {
 
             String call = "{ ? = call maquinarian.MA_FN_CORRELATIVO_OT(?,?,?) }";
-            CallableStatement function = getDBConnection().prepareCall(call);
-            function.registerOutParameter(1, oracle.jdbc.OracleTypes.VARCHAR);
+            function = con.prepareCall(call);
+            function.registerOutParameter(1, Types.VARCHAR);
             function.setInt(2, empresa);
             function.setInt(3, area);
             function.setInt(4, tipoOt);
@@ -551,13 +1049,36 @@ public class DBServiceManager {
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Ocurrio un error al getFormatoOrdenTrabajo", e);
             throw new SQLException(e);
+        } finally {
+            DBConnection.close(function, null);
         }
     }
     //==========================================================================
     // FIN ORDEN DE TRABAJO
     //==========================================================================
 
-    private class WrapperValues {
+    /**
+     * Origen de los registros de una peticion de insert.
+     */
+    private interface InsertSource {
+
+        void writeTo(InsertBatchWriter writer) throws Exception;
+    }
+
+    /**
+     * Registros y parametros de una orden de trabajo.
+     */
+    private static class OrdenTrabajo {
+
+        private JsonRow encabezado;
+        private List<JsonRow> detalle = new ArrayList<>();
+        private List<JsonRow> adjuntos;
+        private String empresa;
+        private String area;
+        private String tipoOT;
+    }
+
+    static class WrapperValues {
 
         private int sortField;
         private String fieldValue;
@@ -0,0 +1,311 @@
+package com.cac.restfull.database;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.cac.restfull.database.DBServiceManager.WrapperValues;
+import com.cac.restfull.webservice.Util;
+
+/**
+ * Clase encargada de enviar inserts por lotes sobre una conexion con el
+ * auto-commit deshabilitado. El commit o rollback lo realiza quien la usa.
+ *
+ * Los registros se envian en el orden recibido: los registros consecutivos
+ * con la misma sentencia se acumulan en un lote, que se ejecuta al llegar al
+ * tamano maximo o al cambiar de sentencia. Cada sentencia se prepara una sola
+ * vez por transaccion. Segun el dialecto, cada sentencia del lote lleva uno o
+ * varios registros, ver {@link SqlDialect#getRowsPerInsert()}.
+ *
+ * @author atorres
+ */
+class InsertBatchWriter {
+
+    private static final Logger LOG = Logger.getLogger(InsertBatchWriter.class.getName());
+
+    private final Connection con;
+    private final int batchSize;
+    private final int rowsPerInsert;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+    private final Set<String> tables = new HashSet<>();
+    /** Registros enviados por tabla, se reportan a {@link Metrics} con el commit. */
+    private final Map<String, Integer> insertedByTable = new HashMap<>();
+
+    private String currentSql;
+    private String currentTable;
+    private PreparedStatement current;
+    /** Registros del lote pendiente, en el orden recibido. */
+    private final Row[] pending;
+    private int pendingCount = 0;
+    private int inserted = 0;
+    private int currentRow = -1;
+
+    InsertBatchWriter(Connection con, int batchSize) {
+        this.con = con;
+        this.batchSize = Math.max(batchSize, 1);
+        this.rowsPerInsert = SqlDialect.getInstance().getRowsPerInsert();
+        this.pending = new Row[this.batchSize];
+    }
+
+    /**
+     * Metodo utilizado para agregar un registro al lote de su sentencia.
+     */
+    void add(Row row) throws Exception {
+        if (!row.sql.equals(currentSql)) {
+            flush();
+            current = prepare(row.sql);
+            currentSql = row.sql;
+            currentTable = row.table;
+        }
+        currentRow = row.index;
+        tables.add(row.table);
+
+        if (rowsPerInsert <= 1) {
+            bindValues(current, row.values);
+            current.addBatch();
+        }
+        pending[pendingCount++] = row;
+
+        if (pendingCount == batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Metodo utilizado para ejecutar el lote pendiente. Si el dialecto envia
+     * varios registros por sentencia, los registros se agrupan en inserts de
+     * rowsPerInsert registros y los restantes se envian uno por uno, todo en
+     * el mismo viaje de cada lote.
+     */
+    void flush() throws Exception {
+        if (pendingCount == 0) {
+            return;
+        }
+        if (rowsPerInsert <= 1) {
+            execute(current, 0, 1);
+        } else {
+            int columns = pending[0].values.size();
+            int perInsert = Math.min(rowsPerInsert,
+                    Math.max(SqlDialect.getInstance().getMaxParameters() / Math.max(columns, 1), 1));
+            int grouped = perInsert > 1 ? pendingCount - pendingCount % perInsert : 0;
+            if (grouped > 0) {
+                String sql = currentSql;
+                PreparedStatement multi = prepare(DBServiceManager.getInstance().getSqlTemplates().get(
+                        () -> SqlDialect.getInstance().multiRowInsert(sql, perInsert), "insertRows", sql, perInsert));
+                for (int i = 0; i < grouped; i += perInsert) {
+                    for (int j = 0; j < perInsert; j++) {
+                        currentRow = pending[i + j].index;
+                        bindValues(multi, pending[i + j].values, j * columns);
+                    }
+                    multi.addBatch();
+                }
+                execute(multi, 0, perInsert);
+            }
+            if (grouped < pendingCount) {
+                for (int i = grouped; i < pendingCount; i++) {
+                    currentRow = pending[i].index;
+                    bindValues(current, pending[i].values);
+                    current.addBatch();
+                }
+                execute(current, grouped, 1);
+            }
+        }
+        insertedByTable.merge(currentTable, pendingCount, Integer::sum);
+        inserted += pendingCount;
+        pendingCount = 0;
+    }
+
+    /**
+     * Metodo utilizado para ejecutar el lote de un statement.
+     *
+     * @param first posicion en el lote pendiente del primer registro.
+     * @param rows registros por cada sentencia del lote.
+     */
+    private void execute(PreparedStatement ps, int first, int rows) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            ps.executeBatch();
+        } catch (BatchUpdateException ex) {
+            currentRow = pending[first + findFailedStatement(ex, (pendingCount - first) / rows) * rows].index;
+            throw ex;
+        } finally {
+            Metrics.getInstance().getStatementExecution().recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    private PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null) {
+            ps = con.prepareStatement(sql);
+            statements.put(sql, ps);
+        }
+        return ps;
+    }
+
+    /**
+     * Metodo utilizado para ejecutar el ultimo lote.
+     *
+     * @return cantidad de registros insertados.
+     */
+    int finish() throws Exception {
+        flush();
+        return inserted;
+    }
+
+    /**
+     * Metodo utilizado para reportar los registros insertados a
+     * {@link Metrics}, despues del commit de la transaccion.
+     */
+    void recordCommitted() {
+        for (Map.Entry<String, Integer> entry : insertedByTable.entrySet()) {
+            Metrics.getInstance().table(entry.getKey()).addInserted(entry.getValue());
+        }
+        insertedByTable.clear();
+    }
+
+    /**
+     * @return posicion del registro en proceso, o del que fallo, -1 si aun
+     * no se ha recibido ninguno.
+     */
+    int getCurrentRow() {
+        return currentRow;
+    }
+
+    void setCurrentRow(int currentRow) {
+        this.currentRow = currentRow;
+    }
+
+    /**
+     * @return tablas modificadas, normalizadas con
+     * {@link ResultCache#tableKey(String)}.
+     */
+    Set<String> getTables() {
+        return tables;
+    }
+
+    /**
+     * Metodo utilizado para cerrar los statements preparados.
+     */
+    void close() {
+        for (PreparedStatement ps : statements.values()) {
+            try {
+                ps.close();
+            } catch (SQLException ex) {
+                LOG.log(Level.SEVERE, "Error al cerrar el statement", ex);
+            }
+        }
+        statements.clear();
+    }
+
+    /**
+     * Metodo utilizado para identificar la sentencia que fallo dentro del
+     * lote, segun los conteos que devuelve el driver. Con varios registros
+     * por sentencia se informa el primero de la sentencia.
+     */
+    private static int findFailedStatement(BatchUpdateException ex, int statementCount) {
+        int[] counts = ex.getUpdateCounts();
+        if (counts != null && counts.length < statementCount) {
+            return counts.length;
+        } else if (counts != null) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == Statement.EXECUTE_FAILED) {
+                    return i;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Metodo utilizado para setear los valores de un registro en el
+     * statement, segun el tipo de cada campo.
+     */
+    static void bindValues(PreparedStatement preparedStatement, List<WrapperValues> values) throws Exception {
+        bindValues(preparedStatement, values, 0);
+    }
+
+    /**
+     * Metodo utilizado para setear los valores de un registro dentro de un
+     * insert de varios registros.
+     *
+     * @param offset parametros de los registros anteriores en la sentencia.
+     */
+    static void bindValues(PreparedStatement preparedStatement, List<WrapperValues> values, int offset) throws Exception {
+        for (WrapperValues wv : values) {
+            int index = wv.getSortField() + offset;
+            switch (wv.getFieldType()) {
+                case INTEGER:
+                    if ( !wv.getFieldValue().equalsIgnoreCase("null") ){
+                        preparedStatement.setInt(index, Integer.parseInt(wv.getFieldValue()));
+                    } else {
+                        preparedStatement.setNull(index, Types.INTEGER);
+                    }
+                    break;
+                case STRING:
+                    if ( !wv.getFieldValue().equalsIgnoreCase("null") ){
+                        preparedStatement.setString(index, wv.getFieldValue());
+                    } else {
+                        preparedStatement.setNull(index, Types.VARCHAR);
+                    }
+                    break;
+                case DATE:
+                    // always is long, must convert long to timeestamp
+                    String cadena = wv.getFieldValue();
+                    if ( !cadena.equalsIgnoreCase("null") ) {
+                        Long valor = Long.parseLong(cadena);
+                        Timestamp tiempo = new Timestamp(valor);
+                        preparedStatement.setTimestamp(index, tiempo);
+                    } else {
+                        preparedStatement.setNull(index,Types.DATE);
+                    }
+                    break;
+                case FLOAT:
+                    if ( !wv.getFieldValue().equalsIgnoreCase("null") ) {
+                        preparedStatement.setFloat(index, Float.parseFloat(wv.getFieldValue()));
+                    } else {
+                        preparedStatement.setNull(index, Types.FLOAT);
+                    }
+                    break;
+                case BLOB:
+                    if ( !wv.getFieldValue().equalsIgnoreCase("null") ) {
+                        // Se decodifica mientras el driver lee, sin el arreglo de bytes completo.
+                        String base64 = wv.getFieldValue();
+                        preparedStatement.setBinaryStream(index, Util.decodeBase64(base64), Util.decodedLength(base64));
+                    } else {
+                        preparedStatement.setNull(index, Types.BLOB);
+                    }
+                    break;
+                default:
+                    throw new SQLException("Unsupported type of field. Type: " + wv.getFieldType() + " Value: " + wv.getFieldValue());
+            }
+        }
+    }
+
+    /**
+     * Registro a insertar con su posicion en la peticion.
+     */
+    static final class Row {
+
+        final int index;
+        final String table;
+        final String sql;
+        final List<WrapperValues> values;
+
+        Row(int index, String table, String sql, List<WrapperValues> values) {
+            this.index = index;
+            this.table = table;
+            this.sql = sql;
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.cac.restfull.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParsingException;
+
+/**
+ * Registro a insertar segun el formato:
+ * {"tableName" : "table name", "columns": JsonArray[column1, column2, n...],
+ * "values":JsonArray[JsonObject{"type":"INTEGER","value":"value"},
+ * JsonObject{"type":"STRING","value":"value"}, n...]}
+ *
+ * Se puede leer de un JsonObject ya construido o directamente de un
+ * {@link JsonParser}, sin construir el arbol del documento completo.
+ *
+ * @author atorres
+ */
+final class JsonRow {
+
+    final String tableName;
+    final String[] columns;
+    final String[] types;
+    final String[] values;
+
+    private JsonRow(String tableName, String[] columns, String[] types, String[] values) {
+        if (tableName == null || columns == null || types == null) {
+            throw new IllegalArgumentException("El registro debe tener tableName, columns y values.");
+        }
+        this.tableName = tableName;
+        this.columns = columns;
+        this.types = types;
+        this.values = values;
+    }
+
+    /**
+     * Metodo utilizado para leer el registro de un JsonObject.
+     */
+    static JsonRow fromJson(JsonObject row) {
+        JsonArray columnArray = row.getJsonArray("columns");
+        String[] columns = new String[columnArray.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = columnArray.getString(i);
+        }
+
+        JsonArray valueArray = row.getJsonArray("values");
+        String[] types = new String[valueArray.size()];
+        String[] values = new String[valueArray.size()];
+        for (int i = 0; i < values.length; i++) {
+            JsonObject pair = valueArray.getJsonObject(i);
+            types[i] = pair.getString("type");
+            values[i] = toText(pair.get("value"));
+        }
+        return new JsonRow(row.getString("tableName"), columns, types, values);
+    }
+
+    /**
+     * Metodo utilizado para leer el registro del parser, que debe estar
+     * posicionado justo despues del START_OBJECT del registro. Al terminar el
+     * parser queda despues del END_OBJECT.
+     */
+    static JsonRow read(JsonParser parser) {
+        String tableName = null;
+        String[] columns = null;
+        List<String> types = null;
+        List<String> values = null;
+
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String key = parser.getString();
+            event = parser.next();
+            switch (key) {
+                case "tableName":
+                    tableName = parser.getString();
+                    break;
+                case "columns":
+                    expect(parser, event, Event.START_ARRAY);
+                    List<String> names = new ArrayList<>();
+                    while (parser.next() != Event.END_ARRAY) {
+                        names.add(parser.getString());
+                    }
+                    columns = names.toArray(new String[names.size()]);
+                    break;
+                case "values":
+                    expect(parser, event, Event.START_ARRAY);
+                    types = new ArrayList<>();
+                    values = new ArrayList<>();
+                    while ((event = parser.next()) != Event.END_ARRAY) {
+                        expect(parser, event, Event.START_OBJECT);
+                        readValue(parser, types, values);
+                    }
+                    break;
+                default:
+                    skip(parser, event);
+                    break;
+            }
+        }
+        return new JsonRow(tableName, columns,
+                types == null ? null : types.toArray(new String[types.size()]),
+                values == null ? null : values.toArray(new String[values.size()]));
+    }
+
+    /**
+     * Metodo utilizado para leer un arreglo de registros. El parser debe
+     * estar posicionado en el START_ARRAY.
+     */
+    static List<JsonRow> readArray(JsonParser parser, Event event) {
+        expect(parser, event, Event.START_ARRAY);
+        List<JsonRow> rows = new ArrayList<>();
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            expect(parser, event, Event.START_OBJECT);
+            rows.add(read(parser));
+        }
+        return rows;
+    }
+
+    /**
+     * Metodo utilizado para leer un objeto de valores simples, como los
+     * parametros de la orden de trabajo. El parser debe estar posicionado en
+     * el START_OBJECT.
+     */
+    static Map<String, String> readFields(JsonParser parser, Event event) {
+        expect(parser, event, Event.START_OBJECT);
+        Map<String, String> fields = new HashMap<>();
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String key = parser.getString();
+            fields.put(key, eventText(parser, parser.next()));
+        }
+        return fields;
+    }
+
+    /**
+     * Metodo utilizado para avanzar el parser hasta el valor de un campo del
+     * objeto principal del documento, saltando los demas campos.
+     *
+     * @return el evento del valor, o null si el campo no existe.
+     */
+    static Event seek(JsonParser parser, String field) {
+        expect(parser, parser.next(), Event.START_OBJECT);
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String key = parser.getString();
+            event = parser.next();
+            if (field.equals(key)) {
+                return event;
+            }
+            skip(parser, event);
+        }
+        return null;
+    }
+
+    private static void readValue(JsonParser parser, List<String> types, List<String> values) {
+        String type = null;
+        String value = "null";
+        Event event;
+        while ((event = parser.next()) != Event.END_OBJECT) {
+            String key = parser.getString();
+            event = parser.next();
+            if ("type".equals(key)) {
+                type = parser.getString();
+            } else if ("value".equals(key)) {
+                value = eventText(parser, event);
+            } else {
+                skip(parser, event);
+            }
+        }
+        types.add(type);
+        values.add(value);
+    }
+
+    /**
+     * Metodo utilizado para saltar el valor actual del parser, incluyendo
+     * los objetos y arreglos anidados.
+     */
+    static void skip(JsonParser parser, Event event) {
+        if (event != Event.START_OBJECT && event != Event.START_ARRAY) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            event = parser.next();
+            if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+                depth++;
+            } else if (event == Event.END_OBJECT || event == Event.END_ARRAY) {
+                depth--;
+            }
+        }
+    }
+
+    static void expect(JsonParser parser, Event actual, Event expected) {
+        if (actual != expected) {
+            throw new JsonParsingException("Se esperaba " + expected + " y se encontro " + actual,
+                    parser.getLocation());
+        }
+    }
+
+    /**
+     * Los valores se manejan como texto, igual que en el formato original;
+     * un null de JSON equivale al texto "null".
+     */
+    private static String eventText(JsonParser parser, Event event) {
+        switch (event) {
+            case VALUE_STRING:
+            case VALUE_NUMBER:
+                return parser.getString();
+            case VALUE_TRUE:
+                return "true";
+            case VALUE_FALSE:
+                return "false";
+            case VALUE_NULL:
+                return "null";
+            default:
+                throw new JsonParsingException("Valor no soportado: " + event, parser.getLocation());
+        }
+    }
+
+    private static String toText(JsonValue value) {
+        if (value == null || value.getValueType() == JsonValue.ValueType.NULL) {
+            return "null";
+        } else if (value instanceof JsonString) {
+            return ((JsonString) value).getString();
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,282 @@
+package com.cac.restfull.database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import com.cac.restfull.webservice.Util;
+
+/**
+ * Respuesta JSON, con cada registro como objeto o, en el formato compacto,
+ * como arreglo de valores precedido por la lista "columns".
+ *
+ * Se escribe directamente en UTF-8: las llaves de cada columna se toman ya
+ * codificadas del {@link RowPlan} y los numeros enteros se escriben sin
+ * pasar por String.
+ *
+ * @author atorres
+ */
+class JsonRowEncoder extends RowEncoder {
+
+    private static final byte[] START = ascii("{\"tag\":\"response\",\"status\":true,\"tableName\":");
+    private static final byte[] COLUMNS = ascii(",\"columns\":");
+    private static final byte[] ROWS = ascii(",\"rows\":[");
+    private static final byte[] NEXT_CURSOR = ascii(",\"nextCursor\":");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    private static final byte[] MIN_LONG = ascii(String.valueOf(Long.MIN_VALUE));
+    private static final byte[] HEX = ascii("0123456789abcdef");
+
+    private final boolean objects;
+    private final byte[] digits = new byte[20];
+    private RowPlan plan;
+    private boolean firstRow = true;
+
+    /**
+     * @param objects true para escribir cada registro como objeto.
+     */
+    JsonRowEncoder(OutputStream out, boolean objects) {
+        super(out);
+        this.objects = objects;
+    }
+
+    /**
+     * Metodo utilizado para codificar la llave de una columna, "nombre":,
+     * precedida por la coma si no es la primera.
+     */
+    static byte[] encodeKey(String name, boolean comma) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(name.length() + 4);
+        JsonRowEncoder encoder = new JsonRowEncoder(bytes, true);
+        try {
+            if (comma) {
+                encoder.write(',');
+            }
+            encoder.writeQuoted(name);
+            encoder.write(':');
+            encoder.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Metodo utilizado para codificar el arreglo con los nombres de las
+     * columnas.
+     */
+    static byte[] encodeNames(String[] names) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonRowEncoder encoder = new JsonRowEncoder(bytes, true);
+        try {
+            encoder.write('[');
+            for (int i = 0; i < names.length; i++) {
+                if (i > 0) {
+                    encoder.write(',');
+                }
+                encoder.writeQuoted(names[i]);
+            }
+            encoder.write(']');
+            encoder.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    void start(String tableName, RowPlan plan) throws IOException {
+        this.plan = plan;
+        write(START);
+        writeQuoted(tableName);
+        if (!objects) {
+            write(COLUMNS);
+            write(plan.getJsonColumns());
+        }
+        write(ROWS);
+    }
+
+    @Override
+    void startRow() throws IOException {
+        if (!firstRow) {
+            write(',');
+        }
+        firstRow = false;
+        write(objects ? '{' : '[');
+    }
+
+    @Override
+    void endRow() throws IOException {
+        write(objects ? '}' : ']');
+    }
+
+    @Override
+    void end(boolean paged, String nextCursor) throws IOException {
+        write(']');
+        if (paged) {
+            write(NEXT_CURSOR);
+            if (nextCursor == null) {
+                write(NULL);
+            } else {
+                writeQuoted(nextCursor);
+            }
+        }
+        write('}');
+        flush();
+    }
+
+    /**
+     * Metodo utilizado para escribir la llave o la coma previa al valor.
+     */
+    private void key(int column) throws IOException {
+        if (objects) {
+            write(plan.getJsonKey(column));
+        } else if (column > 0) {
+            write(',');
+        }
+    }
+
+    @Override
+    void writeNull(int column) throws IOException {
+        key(column);
+        write(NULL);
+    }
+
+    @Override
+    void writeString(int column, String value) throws IOException {
+        key(column);
+        writeQuoted(value);
+    }
+
+    @Override
+    void writeLong(int column, long value) throws IOException {
+        key(column);
+        if (value == Long.MIN_VALUE) {
+            write(MIN_LONG);
+            return;
+        }
+        if (value < 0) {
+            write('-');
+            value = -value;
+        }
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        write(digits, i, digits.length - i);
+    }
+
+    @Override
+    void writeDecimal(int column, BigDecimal value) throws IOException {
+        key(column);
+        writeAscii(value.toString());
+    }
+
+    /**
+     * NaN e infinito no existen en JSON, se envian como texto.
+     */
+    @Override
+    void writeDouble(int column, double value) throws IOException {
+        key(column);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeQuoted(String.valueOf(value));
+        } else {
+            writeAscii(String.valueOf(value));
+        }
+    }
+
+    @Override
+    void writeBoolean(int column, boolean value) throws IOException {
+        key(column);
+        write(value ? TRUE : FALSE);
+    }
+
+    @Override
+    void writeBinary(int column, byte[] value) throws IOException {
+        key(column);
+        write('"');
+        writeAscii(Util.encodeImage(value));
+        write('"');
+    }
+
+    private void writeAscii(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            write(value.charAt(i));
+        }
+    }
+
+    /**
+     * Metodo utilizado para escribir un texto entre comillas, escapando las
+     * comillas, la barra invertida y los caracteres de control, y
+     * codificando el resto en UTF-8.
+     */
+    private void writeQuoted(String value) throws IOException {
+        write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    write(c);
+                } else {
+                    writeEscaped(c);
+                }
+            } else if (c < 0x800) {
+                write(0xc0 | (c >> 6));
+                write(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                write(0xf0 | (codePoint >> 18));
+                write(0x80 | ((codePoint >> 12) & 0x3f));
+                write(0x80 | ((codePoint >> 6) & 0x3f));
+                write(0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // Surrogate sin pareja, no se puede codificar en UTF-8.
+                writeEscaped(c);
+            } else {
+                write(0xe0 | (c >> 12));
+                write(0x80 | ((c >> 6) & 0x3f));
+                write(0x80 | (c & 0x3f));
+            }
+        }
+        write('"');
+    }
+
+    private void writeEscaped(char c) throws IOException {
+        write('\\');
+        switch (c) {
+            case '"':
+            case '\\':
+                write(c);
+                break;
+            case '\n':
+                write('n');
+                break;
+            case '\r':
+                write('r');
+                break;
+            case '\t':
+                write('t');
+                break;
+            case '\b':
+                write('b');
+                break;
+            case '\f':
+                write('f');
+                break;
+            default:
+                write('u');
+                write(HEX[(c >> 12) & 0xf]);
+                write(HEX[(c >> 8) & 0xf]);
+                write(HEX[(c >> 4) & 0xf]);
+                write(HEX[c & 0xf]);
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,132 @@
+package com.cac.restfull.database;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Base64;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * Cursor de paginacion por llave (keyset). Guarda los valores de las columnas
+ * de orderBy del ultimo registro enviado, codificados en Base64 para que el
+ * cliente los trate como un valor opaco.
+ *
+ * Los valores de fecha se guardan como {"ts": milisegundos} y el resto como
+ * texto, igual que se envian los whereValues.
+ *
+ * @author atorres
+ */
+final class KeysetCursor {
+
+    private KeysetCursor() {
+    }
+
+    /**
+     * Metodo utilizado para formar la condicion que selecciona los registros
+     * posteriores al cursor. Para las llaves (k1, k2) se genera:
+     * (k1 > ? or (k1 = ? and k2 > ?))
+     */
+    static String condition(String[] keys) {
+        StringBuilder sql = new StringBuilder("(");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                sql.append(" or ");
+            }
+            sql.append('(');
+            for (int j = 0; j < i; j++) {
+                sql.append(keys[j]).append(" = ? and ");
+            }
+            sql.append(keys[i]).append(" > ?)");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Metodo utilizado para setear los valores del cursor en la condicion
+     * formada por {@link #condition(String[])}.
+     *
+     * @param index posicion del primer parametro de la condicion.
+     * @return posicion del siguiente parametro libre.
+     */
+    static int bind(PreparedStatement ps, int index, String cursor, int keyCount) throws SQLException {
+        Object[] values = decode(cursor, keyCount);
+        for (int i = 0; i < values.length; i++) {
+            for (int j = 0; j <= i; j++) {
+                Object value = values[j];
+                if (value instanceof Timestamp) {
+                    ps.setTimestamp(index++, (Timestamp) value);
+                } else {
+                    ps.setString(index++, (String) value);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Metodo utilizado para formar el cursor con las llaves del registro
+     * actual del ResultSet.
+     */
+    static String encode(ResultSet rs, String[] keys) throws SQLException {
+        JsonArrayBuilder values = Json.createArrayBuilder();
+        for (String key : keys) {
+            int column = rs.findColumn(key);
+            int type = rs.getMetaData().getColumnType(column);
+            if (type == Types.DATE || type == Types.TIMESTAMP) {
+                Timestamp value = rs.getTimestamp(column);
+                if (value == null) {
+                    values.addNull();
+                } else {
+                    values.add(Json.createObjectBuilder().add("ts", value.getTime()));
+                }
+            } else {
+                String value = rs.getString(column);
+                if (value == null) {
+                    values.addNull();
+                } else {
+                    values.add(value);
+                }
+            }
+        }
+        byte[] json = values.build().toString().getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+    }
+
+    private static Object[] decode(String cursor, int keyCount) {
+        JsonArray array;
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(cursor);
+            JsonReader reader = Json.createReader(new StringReader(new String(json, StandardCharsets.UTF_8)));
+            array = reader.readArray();
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("El cursor after no es valido.", ex);
+        }
+        if (array.size() != keyCount) {
+            throw new IllegalArgumentException("El cursor after no corresponde con orderBy.");
+        }
+        Object[] values = new Object[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            JsonValue value = array.get(i);
+            if (value instanceof JsonString) {
+                values[i] = ((JsonString) value).getString();
+            } else if (value.getValueType() == JsonValue.ValueType.OBJECT) {
+                JsonNumber millis = ((JsonObject) value).getJsonNumber("ts");
+                values[i] = new Timestamp(millis.longValue());
+            } else {
+                throw new IllegalArgumentException("El cursor after contiene llaves nulas.");
+            }
+        }
+        return values;
+    }
+}
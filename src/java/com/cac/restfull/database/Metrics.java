@@ -0,0 +1,214 @@
+package com.cac.restfull.database;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import com.cac.restfull.webservice.Util;
+
+/**
+ * Metricas del servicio: peticiones, errores y tiempos por endpoint y por
+ * tabla, registros y bytes enviados, espera por conexiones y tiempo de
+ * ejecucion de las sentencias contra el de codificacion del JSON.
+ *
+ * Registrar solo incrementa contadores atomicos sobre objetos ya creados; los
+ * contadores de un endpoint o tabla se crean la primera vez que aparece.
+ *
+ * @author atorres
+ */
+public class Metrics {
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private final long startedAt = System.currentTimeMillis();
+
+    private final ConcurrentHashMap<String, OperationStats> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, OperationStats> tables = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram borrowWait = new LatencyHistogram();
+    private final LatencyHistogram statementExecution = new LatencyHistogram();
+    private final LatencyHistogram jsonEncoding = new LatencyHistogram();
+
+    private Metrics() {
+    }
+
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return contadores del endpoint, creados la primera vez.
+     */
+    public OperationStats endpoint(String name) {
+        return statsOf(endpoints, name);
+    }
+
+    /**
+     * @param table nombre normalizado, ver {@link ResultCache#tableKey(String)}.
+     * @return contadores de la tabla, creados la primera vez.
+     */
+    public OperationStats table(String table) {
+        return statsOf(tables, table);
+    }
+
+    /**
+     * @return espera de los hilos por una conexion del pool.
+     */
+    public LatencyHistogram getBorrowWait() {
+        return borrowWait;
+    }
+
+    /**
+     * @return tiempo de executeQuery y executeBatch.
+     */
+    public LatencyHistogram getStatementExecution() {
+        return statementExecution;
+    }
+
+    /**
+     * @return tiempo de recorrer el ResultSet y escribir el JSON de la
+     * respuesta.
+     */
+    public LatencyHistogram getJsonEncoding() {
+        return jsonEncoding;
+    }
+
+    private static OperationStats statsOf(ConcurrentHashMap<String, OperationStats> map, String name) {
+        OperationStats stats = map.get(name);
+        if (stats == null) {
+            map.putIfAbsent(name, new OperationStats());
+            stats = map.get(name);
+        }
+        return stats;
+    }
+
+    /**
+     * Metodo utilizado para formar la respuesta de /Service/metrics. Los
+     * tiempos se expresan en milisegundos.
+     */
+    public JsonObjectBuilder toJson() {
+        JsonObjectBuilder json = Util.createJSONObjectBuilder("response", true);
+        json.add("uptimeMs", System.currentTimeMillis() - startedAt);
+        json.add("endpoints", toJson(endpoints));
+        json.add("tables", toJson(tables));
+        json.add("timings", Json.createObjectBuilder()
+                .add("borrowWait", toJson(borrowWait))
+                .add("statementExecution", toJson(statementExecution))
+                .add("jsonEncoding", toJson(jsonEncoding)));
+
+        DBConnectionPool pool = DBConnection.currentPool();
+        if (pool != null) {
+            json.add("pool", Json.createObjectBuilder()
+                    .add("active", pool.getActiveCount())
+                    .add("idle", pool.getIdleCount())
+                    .add("total", pool.getTotalCount())
+                    .add("max", pool.getMaxSize())
+                    .add("statementCacheHits", pool.getStatementCacheHits())
+                    .add("statementCacheMisses", pool.getStatementCacheMisses()));
+        }
+
+        DBServiceManager manager = DBServiceManager.getInstance();
+        SqlTemplateCache templates = manager.getSqlTemplates();
+        json.add("sqlTemplates", Json.createObjectBuilder()
+                .add("hits", templates.getHits())
+                .add("misses", templates.getMisses())
+                .add("size", templates.size()));
+
+        ResultCache cache = manager.getResultCache();
+        json.add("resultCache", Json.createObjectBuilder()
+                .add("hits", cache.getHits())
+                .add("misses", cache.getMisses())
+                .add("hitRatio", cache.getHitRatio())
+                .add("evictions", cache.getEvictions())
+                .add("expirations", cache.getExpirations())
+                .add("invalidations", cache.getInvalidations())
+                .add("notModified", cache.getNotModified())
+                .add("size", cache.size())
+                .add("bytes", cache.getBytes()));
+
+        ReadCoalescer coalescer = manager.getReadCoalescer();
+        json.add("coalescing", Json.createObjectBuilder()
+                .add("executed", coalescer.getExecuted())
+                .add("coalesced", coalescer.getCoalesced())
+                .add("fallbacks", coalescer.getFallbacks())
+                .add("inFlight", coalescer.getInFlight()));
+        return json;
+    }
+
+    private static JsonObjectBuilder toJson(Map<String, OperationStats> map) {
+        JsonObjectBuilder json = Json.createObjectBuilder();
+        for (Map.Entry<String, OperationStats> entry : new TreeMap<>(map).entrySet()) {
+            OperationStats stats = entry.getValue();
+            json.add(entry.getKey(), Json.createObjectBuilder()
+                    .add("requests", stats.requests.get())
+                    .add("errors", stats.errors.get())
+                    .add("rows", stats.rows.get())
+                    .add("bytes", stats.bytes.get())
+                    .add("inserted", stats.inserted.get())
+                    .add("latencyMs", toJson(stats.latency)));
+        }
+        return json;
+    }
+
+    static JsonObjectBuilder toJson(LatencyHistogram histogram) {
+        return Json.createObjectBuilder()
+                .add("count", histogram.getCount())
+                .add("mean", histogram.getMean() / 1000.0)
+                .add("p50", histogram.getPercentile(50) / 1000.0)
+                .add("p95", histogram.getPercentile(95) / 1000.0)
+                .add("p99", histogram.getPercentile(99) / 1000.0)
+                .add("max", histogram.getMax() / 1000.0);
+    }
+
+    /**
+     * Contadores de un endpoint o de una tabla.
+     */
+    public static final class OperationStats {
+
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong inserted = new AtomicLong();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        /**
+         * Metodo utilizado para registrar una peticion terminada.
+         *
+         * @param startNanos valor de System.nanoTime() al iniciar.
+         */
+        public void record(long startNanos, boolean error) {
+            requests.incrementAndGet();
+            if (error) {
+                errors.incrementAndGet();
+            }
+            latency.recordNanos(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * Metodo utilizado para registrar los registros y bytes enviados.
+         */
+        public void addSent(long rowCount, long byteCount) {
+            rows.addAndGet(rowCount);
+            bytes.addAndGet(byteCount);
+        }
+
+        public void addInserted(long rowCount) {
+            inserted.addAndGet(rowCount);
+        }
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.cac.restfull.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import static com.cac.restfull.database.DBConnection.getDBConnection;
+
+/**
+ * Asigna los numeros de orden de trabajo (NO_ORDEN_TRABAJO) por empresa.
+ *
+ * Los numeros se reservan por bloques de blockSize y se entregan desde
+ * memoria con un contador atomico, sin consultar la base de datos en cada
+ * orden:
+ * <ul>
+ * <li>Con una secuencia configurada (cac.ot.sequence) cada nextval reserva un
+ * bloque. La secuencia debe crearse con INCREMENT BY igual a blockSize y
+ * START WITH mayor al numero actual; puede incluir {empresa} en el nombre
+ * para tener una secuencia por empresa. Es seguro con varios servidores.</li>
+ * <li>Por defecto se reserva en una tabla de correlativos (cac.ot.hiloTable)
+ * con el ultimo numero reservado por empresa (HI), que se aumenta en
+ * blockSize dentro de una transaccion. Si la tabla de ordenes ya tiene un
+ * numero mayor (ordenes creadas por otro sistema o a mano) el bloque empieza
+ * despues de este. La fila de cada empresa se crea con la primera reserva.
+ * Es seguro con varios servidores que usen la misma tabla; la tabla debe
+ * crearse antes con:
+ * <pre>
+ * CREATE TABLE MAQUINARIAN.MA_CORRELATIVO_ORDEN_TRABAJO (
+ *     ID_EMPRESA NUMBER(4) NOT NULL PRIMARY KEY,
+ *     HI NUMBER(10) NOT NULL)
+ * </pre></li>
+ * <li>Sin secuencia ni tabla de correlativos se consulta el
+ * MAX(NO_ORDEN_TRABAJO) al iniciar cada bloque. No reserva nada en la base
+ * de datos, por lo que solo es correcto si este servidor es el unico que
+ * crea ordenes.</li>
+ * </ul>
+ * Los numeros de un bloque que no se usen antes de reiniciar el servidor se
+ * pierden, por lo que pueden quedar huecos en la numeracion.
+ *
+ * @author atorres
+ */
+class NoOrdenTrabajoAllocator {
+
+    private static final Logger LOG = Logger.getLogger(NoOrdenTrabajoAllocator.class.getName());
+
+    private static final String MAX_SQL = "SELECT COALESCE(MAX(NO_ORDEN_TRABAJO),0) + 1 CORRELATIVO "
+            + "FROM MAQUINARIAN.MA_MAESTRO_ORDEN_TRABAJO WHERE ID_EMPRESA = ?";
+
+    private static final String MAX_SUBQUERY = "(SELECT COALESCE(MAX(NO_ORDEN_TRABAJO),0) "
+            + "FROM MAQUINARIAN.MA_MAESTRO_ORDEN_TRABAJO WHERE ID_EMPRESA = ?)";
+
+    private final String sequence;
+    private final String hiloTable;
+    private final int blockSize;
+    private final ConcurrentHashMap<Integer, Block> blocks = new ConcurrentHashMap<>();
+    /** Cada empresa reserva con su propio bloqueo, sin detener a las demas. */
+    private final ConcurrentHashMap<Integer, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * @param sequence nombre de la secuencia, vacio para usar la tabla de
+     * correlativos.
+     * @param hiloTable tabla de correlativos, vacio para usar el MAX de la
+     * tabla de ordenes.
+     * @param blockSize numeros que reserva cada bloque.
+     */
+    NoOrdenTrabajoAllocator(String sequence, String hiloTable, int blockSize) {
+        this.sequence = sequence == null ? "" : sequence.trim();
+        this.hiloTable = hiloTable == null ? "" : hiloTable.trim();
+        this.blockSize = Math.max(blockSize, 1);
+    }
+
+    /**
+     * Metodo utilizado para obtener el siguiente numero de orden de la
+     * empresa. Solo consulta la base de datos cuando se agota el bloque.
+     */
+    long next(int empresa) throws SQLException {
+        Block block = blocks.get(empresa);
+        while (true) {
+            if (block != null) {
+                long value = block.next.getAndIncrement();
+                if (value < block.end) {
+                    return value;
+                }
+            }
+            block = reserve(empresa, block);
+        }
+    }
+
+    /**
+     * Metodo utilizado para reservar un nuevo bloque. Solo un hilo por
+     * empresa consulta la base de datos; los demas toman el bloque que este
+     * deja.
+     */
+    private Block reserve(int empresa, Block exhausted) throws SQLException {
+        synchronized (lockOf(empresa)) {
+            Block current = blocks.get(empresa);
+            if (current != exhausted) {
+                return current;
+            }
+            Block block;
+            if (!sequence.isEmpty()) {
+                block = fromSequence(empresa);
+            } else if (!hiloTable.isEmpty()) {
+                block = fromHiLo(empresa);
+            } else {
+                block = fromMax(empresa, exhausted);
+            }
+            blocks.put(empresa, block);
+            LOG.log(Level.INFO, "Bloque de ordenes de trabajo para la empresa {0} desde {1}",
+                    new Object[]{empresa, block.next.get()});
+            return block;
+        }
+    }
+
+    private Block fromSequence(int empresa) throws SQLException {
+        String sql = SqlDialect.getInstance().nextValue(
+                sequence.replace("{empresa}", String.valueOf(empresa)));
+        long start = queryLong(sql, null);
+        return new Block(start, start + blockSize);
+    }
+
+    /**
+     * Metodo utilizado para reservar un bloque en la tabla de correlativos.
+     * El update bloquea la fila de la empresa hasta el commit, de modo que
+     * dos servidores no reciben el mismo bloque.
+     */
+    private Block fromHiLo(int empresa) throws SQLException {
+        String update = "UPDATE " + hiloTable + " SET HI = GREATEST(HI, " + MAX_SUBQUERY + ") + ? "
+                + "WHERE ID_EMPRESA = ?";
+        String insert = "INSERT INTO " + hiloTable + " (ID_EMPRESA, HI) SELECT ?, COALESCE(MAX(NO_ORDEN_TRABAJO),0) + ? "
+                + "FROM MAQUINARIAN.MA_MAESTRO_ORDEN_TRABAJO WHERE ID_EMPRESA = ?";
+        String select = "SELECT HI FROM " + hiloTable + " WHERE ID_EMPRESA = ?";
+
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getDBConnection();
+            con.setAutoCommit(false);
+            ps = con.prepareStatement(update);
+            ps.setInt(1, empresa);
+            ps.setInt(2, blockSize);
+            ps.setInt(3, empresa);
+            if (ps.executeUpdate() == 0) {
+                ps.close();
+                ps = con.prepareStatement(insert);
+                ps.setInt(1, empresa);
+                ps.setInt(2, blockSize);
+                ps.setInt(3, empresa);
+                try {
+                    ps.executeUpdate();
+                } catch (SQLException ex) {
+                    // Otro servidor creo la fila al mismo tiempo, se reserva sobre ella.
+                    LOG.log(Level.FINE, "Fila de correlativos creada por otra reserva", ex);
+                    con.rollback();
+                    ps.close();
+                    ps = con.prepareStatement(update);
+                    ps.setInt(1, empresa);
+                    ps.setInt(2, blockSize);
+                    ps.setInt(3, empresa);
+                    ps.executeUpdate();
+                }
+            }
+            ps.close();
+            ps = con.prepareStatement(select);
+            ps.setInt(1, empresa);
+            ResultSet result = ps.executeQuery();
+            result.next();
+            long hi = result.getLong(1);
+            con.commit();
+            return new Block(hi - blockSize + 1, hi + 1);
+        } catch (ClassNotFoundException ex) {
+            throw new SQLException(ex);
+        } finally {
+            DBConnection.close(ps, con);
+        }
+    }
+
+    /**
+     * Metodo utilizado para iniciar un bloque desde el MAX de la tabla, sin
+     * repetir los numeros del bloque anterior que aun no se hayan insertado.
+     */
+    private Block fromMax(int empresa, Block exhausted) throws SQLException {
+        long start = queryLong(MAX_SQL, empresa);
+        if (exhausted != null) {
+            start = Math.max(start, exhausted.end);
+        }
+        return new Block(start, start + blockSize);
+    }
+
+    private long queryLong(String sql, Integer empresa) throws SQLException {
+        Connection con = null;
+        PreparedStatement ps = null;
+        try {
+            con = getDBConnection();
+            ps = con.prepareStatement(sql);
+            if (empresa != null) {
+                ps.setInt(1, empresa);
+            }
+            ResultSet result = ps.executeQuery();
+            result.next();
+            return result.getLong(1);
+        } catch (ClassNotFoundException ex) {
+            throw new SQLException(ex);
+        } finally {
+            DBConnection.close(ps, con);
+        }
+    }
+
+    private Object lockOf(int empresa) {
+        Object lock = locks.get(empresa);
+        if (lock == null) {
+            locks.putIfAbsent(empresa, new Object());
+            lock = locks.get(empresa);
+        }
+        return lock;
+    }
+
+    /**
+     * Rango de numeros reservado, desde next hasta end (sin incluir).
+     */
+    private static final class Block {
+
+        private final AtomicLong next;
+        private final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.cac.restfull.database;
+
+import java.util.Properties;
+import com.cac.restfull.webservice.AppConstant;
+
+/**
+ * Dialecto de Oracle.
+ *
+ * Los inserts se envian como lote de JDBC, que el driver de Oracle ejecuta
+ * con array binding en un solo viaje; INSERT ALL queda disponible con
+ * -Dcac.db.rowsPerInsert, aunque Oracle debe analizar una sentencia distinta
+ * por cada cantidad de registros.
+ *
+ * @author atorres
+ */
+class OracleDialect extends SqlDialect {
+
+    @Override
+    public String getDriverClass() {
+        return "oracle.jdbc.driver.OracleDriver";
+    }
+
+    /**
+     * Se ajusta el prefetch por defecto de las consultas que no indican el
+     * fetch size, el driver trae 10 registros por viaje.
+     */
+    @Override
+    public Properties getConnectionProperties(String user, String pass) {
+        Properties properties = super.getConnectionProperties(user, pass);
+        properties.setProperty("defaultRowPrefetch", String.valueOf(AppConstant.DB_FETCH_SIZE));
+        return properties;
+    }
+
+    @Override
+    public String getHealthQuery() {
+        return "select 'connected' AS DUMMY from dual";
+    }
+
+    @Override
+    public String getValidationQuery() {
+        return "select 1 from dual";
+    }
+
+    @Override
+    public String limit(String select) {
+        return "select * from (" + select + ") where rownum <= ?";
+    }
+
+    @Override
+    public String nextValue(String sequence) {
+        return "SELECT " + sequence + ".NEXTVAL FROM DUAL";
+    }
+
+    /**
+     * ojdbc14 implementa JDBC 3, el tamano es obligatorio.
+     */
+    @Override
+    public boolean supportsUnknownLengthStreams() {
+        return false;
+    }
+
+    @Override
+    protected int getDefaultRowsPerInsert() {
+        return 1;
+    }
+
+    @Override
+    public int getMaxParameters() {
+        return 65535;
+    }
+
+    @Override
+    public String multiRowInsert(String insertSql, int rows) {
+        String[] parts = splitInsert(insertSql);
+        String into = parts[0].substring("insert ".length()).trim();
+        StringBuilder sql = new StringBuilder("insert all");
+        for (int i = 0; i < rows; i++) {
+            sql.append(' ').append(into).append(" values ").append(parts[1]);
+        }
+        return sql.append(" select 1 from dual").toString();
+    }
+}
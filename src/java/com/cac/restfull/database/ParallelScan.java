@@ -0,0 +1,268 @@
+package com.cac.restfull.database;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.cac.restfull.webservice.AppConstant;
+
+/**
+ * Lectura de getDataFromTable dividida en rangos de una llave numerica, que
+ * se leen al mismo tiempo, cada uno con su conexion del pool, y se escriben
+ * en una sola respuesta con el mismo formato de {@link TableResultStream}.
+ *
+ * Los rangos se leen en los hilos de {@link ReadExecutor} y envian
+ * los registros en bloques por una cola de tamano fijo, de modo que un rango
+ * mas rapido que la escritura espera en lugar de acumular registros. Con
+ * ordered cada rango se lee ordenado por la llave y se escriben uno tras otro;
+ * sin ordered se escriben en el orden en que llegan los bloques.
+ *
+ * Cada rango es una consulta distinta, por lo que los registros modificados
+ * durante la lectura pueden verse en un rango y no en otro.
+ *
+ * Si la respuesta deja de escribirse (el cliente se desconecta antes de
+ * recibirla, o nunca se llama a {@link #write(OutputStream)} ni a
+ * {@link #close()}), los rangos que esperan en la cola mas de
+ * {@link AppConstant#DB_PARALLEL_STALL_MS} cancelan la lectura y liberan sus
+ * conexiones. De la misma forma, la escritura que no recibe registros durante
+ * ese tiempo (los rangos no llegan a ejecutarse o la consulta no avanza)
+ * cancela la lectura y falla.
+ *
+ * @author atorres
+ */
+final class ParallelScan implements TableResult {
+
+    private static final Logger LOG = Logger.getLogger(ParallelScan.class.getName());
+
+    /** Registros por bloque enviado a la escritura. */
+    private static final int CHUNK_ROWS = 256;
+    /** Bloques en espera por cada rango. */
+    private static final int CHUNKS_PER_RANGE = 4;
+
+    private final SelectRequest request;
+    private final Range[] ranges;
+    private final RowPlan.Cache plans;
+    /** Cola de cada rango si es ordenada; una sola compartida si no. */
+    private final List<BlockingQueue<Chunk>> queues = new ArrayList<>();
+    private volatile boolean cancelled = false;
+
+    ParallelScan(SelectRequest request, Range[] ranges, RowPlan.Cache plans) {
+        this.request = request;
+        this.ranges = ranges;
+        this.plans = plans;
+        if (request.isOrdered()) {
+            for (int i = 0; i < ranges.length; i++) {
+                queues.add(new ArrayBlockingQueue<>(CHUNKS_PER_RANGE));
+            }
+        } else {
+            queues.add(new ArrayBlockingQueue<>(CHUNKS_PER_RANGE * ranges.length));
+        }
+    }
+
+    /**
+     * Metodo utilizado para iniciar la lectura de los rangos.
+     */
+    ParallelScan start() {
+        for (int i = 0; i < ranges.length; i++) {
+            int index = i;
+            ReadExecutor.execute(() -> read(index));
+        }
+        return this;
+    }
+
+    /**
+     * Metodo utilizado para leer un rango y enviar sus registros en bloques.
+     * El ultimo bloque del rango, o el error, se marca como final.
+     */
+    private void read(int index) {
+        Range range = ranges[index];
+        BlockingQueue<Chunk> queue = queues.get(request.isOrdered() ? index : 0);
+        Connection con = null;
+        PreparedStatement ps = null;
+        RowPlan plan = null;
+        if (cancelled) {
+            // La lectura se cancelo antes de que el rango llegara a ejecutarse.
+            return;
+        }
+        try {
+            con = DBConnection.getDBConnection();
+            ps = con.prepareStatement(range.sql);
+            ps.setFetchSize(request.getFetchSize());
+            int parameter = DBServiceManager.bindWhereValues(ps, 1, request.getWhereValues());
+            if (range.lower != null) {
+                ps.setBigDecimal(parameter++, range.lower);
+            }
+            if (range.upper != null) {
+                ps.setBigDecimal(parameter, range.upper);
+            }
+
+            long start = System.nanoTime();
+            ResultSet rs = ps.executeQuery();
+            Metrics.getInstance().getStatementExecution().recordNanos(System.nanoTime() - start);
+
+            plan = plans.get(range.sql, request.getColumns(), rs);
+            Object[][] rows = new Object[CHUNK_ROWS][];
+            int count = 0;
+            while (!cancelled && rs.next()) {
+                rows[count++] = plan.readRow(rs);
+                if (count == CHUNK_ROWS) {
+                    put(queue, new Chunk(plan, rows, count, false, null));
+                    rows = new Object[CHUNK_ROWS][];
+                    count = 0;
+                }
+            }
+            put(queue, new Chunk(plan, rows, count, true, null));
+        } catch (Exception ex) {
+            put(queue, new Chunk(plan, null, 0, true, ex));
+        } finally {
+            DBConnection.close(ps, con);
+        }
+    }
+
+    /**
+     * Metodo utilizado para entregar un bloque, esperando mientras la cola
+     * este llena y la lectura no se haya cancelado. Si la escritura no toma
+     * bloques durante el tiempo maximo de espera, se cancela la lectura.
+     */
+    private void put(BlockingQueue<Chunk> queue, Chunk chunk) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AppConstant.DB_PARALLEL_STALL_MS);
+        try {
+            while (!cancelled && !queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                if (System.nanoTime() - deadline > 0 && !cancelled) {
+                    LOG.log(Level.WARNING, "Lectura en paralelo de {0} cancelada, la respuesta no se escribio en {1} ms",
+                            new Object[]{request.getTableName(), AppConstant.DB_PARALLEL_STALL_MS});
+                    close();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Metodo utilizado para escribir los registros de todos los rangos a
+     * medida que llegan. Si un rango falla se cancelan los demas y se lanza
+     * la excepcion con la respuesta incompleta.
+     */
+    @Override
+    public void write(OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        TableResultStream.CountingOutputStream counter = new TableResultStream.CountingOutputStream(out);
+        String tableName = request.getTableName();
+        boolean error = true;
+        long count = 0;
+        try {
+            RowEncoder encoder = RowEncoder.create(request.getFormat(), counter);
+            boolean started = false;
+            int pending = ranges.length;
+            int current = 0;
+            long stall = TimeUnit.MILLISECONDS.toNanos(AppConstant.DB_PARALLEL_STALL_MS);
+            long received = System.nanoTime();
+            while (pending > 0) {
+                Chunk chunk = queues.get(request.isOrdered() ? current : 0).poll(100, TimeUnit.MILLISECONDS);
+                if (chunk == null) {
+                    if (cancelled) {
+                        throw new IOException("Lectura en paralelo de " + tableName + " cancelada despues de "
+                                + count + " registros");
+                    }
+                    if (System.nanoTime() - received > stall) {
+                        close();
+                        throw new IOException("Lectura en paralelo de " + tableName + " sin registros en "
+                                + AppConstant.DB_PARALLEL_STALL_MS + " ms, despues de " + count + " registros");
+                    }
+                    continue;
+                }
+                received = System.nanoTime();
+                if (chunk.error != null) {
+                    throw new IOException("Error leyendo " + tableName + " despues de " + count + " registros",
+                            chunk.error);
+                }
+                if (!started) {
+                    encoder.start(tableName, chunk.plan);
+                    started = true;
+                }
+                for (int i = 0; i < chunk.count; i++) {
+                    chunk.plan.writeValues(chunk.rows[i], encoder);
+                }
+                count += chunk.count;
+                if (chunk.last) {
+                    pending--;
+                    current++;
+                }
+            }
+            encoder.end(false, null);
+            error = false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, "Error en la lectura en paralelo de " + tableName, ex);
+            throw ex;
+        } finally {
+            close();
+            Metrics metrics = Metrics.getInstance();
+            metrics.getJsonEncoding().recordNanos(System.nanoTime() - start);
+            Metrics.OperationStats stats = metrics.table(request.getTableKey());
+            stats.record(start, error);
+            stats.addSent(count, counter.count);
+        }
+    }
+
+    /**
+     * Metodo utilizado para cancelar los rangos pendientes; cada uno libera su
+     * conexion al terminar el registro en proceso.
+     */
+    @Override
+    public void close() {
+        cancelled = true;
+        for (BlockingQueue<Chunk> queue : queues) {
+            queue.clear();
+        }
+    }
+
+    /**
+     * Rango de la llave: la consulta y sus limites, null si el rango es
+     * abierto de ese lado.
+     */
+    static final class Range {
+
+        final String sql;
+        final BigDecimal lower;
+        final BigDecimal upper;
+
+        Range(String sql, BigDecimal lower, BigDecimal upper) {
+            this.sql = sql;
+            this.lower = lower;
+            this.upper = upper;
+        }
+    }
+
+    /**
+     * Bloque de registros de un rango.
+     */
+    private static final class Chunk {
+
+        final RowPlan plan;
+        final Object[][] rows;
+        final int count;
+        final boolean last;
+        final Exception error;
+
+        Chunk(RowPlan plan, Object[][] rows, int count, boolean last, Exception error) {
+            this.plan = plan;
+            this.rows = rows;
+            this.count = count;
+            this.last = last;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.cac.restfull.database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.cac.restfull.webservice.DBExecutor;
+
+/**
+ * Agrupa las lecturas identicas que llegan al mismo tiempo: la primera
+ * ejecuta la consulta y las demas esperan su respuesta, sin ir a la base de
+ * datos. Pensado para el inicio de turno, cuando todos los equipos piden los
+ * mismos catalogos a la vez; no depende del {@link ResultCache}.
+ *
+ * Si al empezar a escribir la primera lectura ya hay otras esperando,
+ * retiene su respuesta hasta maxBytes; al terminar la entrega a las que
+ * esperan y luego la escribe a su cliente, de modo que un cliente lento no
+ * detiene a los demas. Si nadie espera la escribe directo, sin retenerla, y
+ * las peticiones que llegan despues ejecutan su propia lectura.
+ *
+ * Las que esperan lo hacen al escribir la respuesta, sin ocupar un hilo ni
+ * un permiso del {@link DBExecutor}. Si la respuesta supera maxBytes, o la
+ * lectura falla, ejecutan su propia consulta por medio del
+ * {@link DBExecutor}, con sus reglas de admision.
+ *
+ * @author atorres
+ */
+public class ReadCoalescer {
+
+    private static final Logger LOG = Logger.getLogger(ReadCoalescer.class.getName());
+
+    private final int maxBytes;
+    private final long waitMs;
+
+    /** Lecturas en curso por llave. */
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * @param maxBytes tamano maximo de una respuesta para compartirse, 0 para
+     * no agrupar las lecturas.
+     * @param waitMs tiempo maximo de espera por la primera lectura; una
+     * lectura en curso mas antigua ya no recibe a nuevas peticiones.
+     */
+    public ReadCoalescer(int maxBytes, long waitMs) {
+        this.maxBytes = maxBytes;
+        this.waitMs = waitMs;
+    }
+
+    /**
+     * Metodo utilizado para obtener la respuesta de una lectura, compartiendo
+     * la de una lectura identica en curso si existe.
+     *
+     * @param key llave de la lectura; debe incluir la version de la tabla
+     * para no compartir respuestas iniciadas antes de un insert.
+     * @param read lectura a ejecutar si no hay una en curso.
+     * @return resultado listo para escribirse en la respuesta.
+     */
+    public TableResult get(String key, Callable<TableResult> read) throws Exception {
+        return get(key, read, Long.MAX_VALUE);
+    }
+
+    /**
+     * Metodo utilizado para obtener la respuesta de una lectura, esperando la
+     * de una lectura identica en curso a lo sumo hasta deadline.
+     *
+     * @param deadline fecha limite en milisegundos de la peticion; si vence
+     * mientras espera, la escritura falla sin ejecutar la lectura.
+     */
+    public TableResult get(String key, Callable<TableResult> read, long deadline) throws Exception {
+        if (maxBytes <= 0) {
+            return read.call();
+        }
+        Flight flight = new Flight();
+        Flight current = flights.putIfAbsent(key, flight);
+        while (current != null) {
+            if (System.currentTimeMillis() - current.startedAt < waitMs && current.join()) {
+                return follow(current, read, deadline);
+            }
+            // La primera lectura ya no recibe peticiones (termino, empezo a
+            // escribirse sin retener o nunca se escribio), se reemplaza.
+            if (flights.replace(key, current, flight)) {
+                break;
+            }
+            current = flights.putIfAbsent(key, flight);
+        }
+
+        executed.incrementAndGet();
+        TableResult source;
+        try {
+            source = read.call();
+        } catch (Exception ex) {
+            finish(key, flight, null);
+            throw ex;
+        }
+        return lead(key, flight, source);
+    }
+
+    /**
+     * Metodo utilizado para envolver la primera lectura, que retiene su
+     * respuesta para entregarla a las que esperan, si las hay.
+     */
+    private TableResult lead(String key, Flight flight, TableResult source) {
+        return new TableResult() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                if (!flight.hold()) {
+                    finish(key, flight, null);
+                    source.write(out);
+                    return;
+                }
+                HoldOutputStream hold = new HoldOutputStream(out, maxBytes, () -> finish(key, flight, null));
+                byte[] body = null;
+                try {
+                    source.write(hold);
+                    body = hold.getBody();
+                } finally {
+                    finish(key, flight, body);
+                }
+                if (body != null) {
+                    out.write(body);
+                }
+            }
+
+            @Override
+            public void close() {
+                try {
+                    source.close();
+                } finally {
+                    finish(key, flight, null);
+                }
+            }
+        };
+    }
+
+    /**
+     * Metodo utilizado para esperar la respuesta de la primera lectura, o
+     * ejecutar la propia en el {@link DBExecutor} si no se pudo compartir.
+     * Mientras espera no ocupa un permiso del {@link DBExecutor}; solo la
+     * lectura propia toma uno.
+     */
+    private TableResult follow(Flight flight, Callable<TableResult> read, long deadline) {
+        return new TableResult() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                byte[] body = null;
+                try {
+                    long wait = Math.min(waitMs, deadline - System.currentTimeMillis());
+                    if (flight.done.await(wait, TimeUnit.MILLISECONDS)) {
+                        body = flight.body;
+                    } else if (System.currentTimeMillis() >= deadline) {
+                        throw new IOException("Tiempo de espera agotado.");
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(ex);
+                }
+                if (body != null) {
+                    coalesced.incrementAndGet();
+                    out.write(body);
+                    return;
+                }
+
+                fallbacks.incrementAndGet();
+                LOG.log(Level.FINE, "Respuesta no compartida, se ejecuta la lectura");
+                TableResult own;
+                try {
+                    own = DBExecutor.getInstance().executeRead(read);
+                } catch (IOException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new IOException(ex);
+                }
+                if (own == null) {
+                    throw new IOException("El servidor esta ocupado, intente de nuevo.");
+                }
+                own.write(out);
+            }
+
+            @Override
+            public boolean holdsConnection() {
+                return false;
+            }
+        };
+    }
+
+    private void finish(String key, Flight flight, byte[] body) {
+        flights.remove(key, flight);
+        flight.complete(body);
+    }
+
+    /**
+     * @return lecturas ejecutadas contra la base de datos.
+     */
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    /**
+     * @return lecturas respondidas con la respuesta de otra.
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return lecturas que esperaron a otra y terminaron ejecutando la propia.
+     */
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    public int getInFlight() {
+        return flights.size();
+    }
+
+    /**
+     * Lectura en curso; body es null si la respuesta no se puede compartir.
+     */
+    private static final class Flight {
+
+        private final long startedAt = System.currentTimeMillis();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile byte[] body;
+        private int followers = 0;
+        private boolean open = true;
+
+        /**
+         * @return false si la lectura ya no recibe a nuevas peticiones.
+         */
+        synchronized boolean join() {
+            if (open) {
+                followers++;
+            }
+            return open;
+        }
+
+        /**
+         * Metodo utilizado al empezar a escribir la primera lectura: si nadie
+         * la espera deja de recibir peticiones, ya que no retiene la
+         * respuesta.
+         *
+         * @return true si hay lecturas esperando la respuesta.
+         */
+        synchronized boolean hold() {
+            open = followers > 0;
+            return open;
+        }
+
+        synchronized void complete(byte[] body) {
+            open = false;
+            if (done.getCount() > 0) {
+                this.body = body;
+                done.countDown();
+            }
+        }
+    }
+
+    /**
+     * Retiene la respuesta mientras no supere el limite; al superarlo avisa a
+     * las que esperan, envia lo retenido y sigue escribiendo directo en la
+     * salida.
+     */
+    private static final class HoldOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final int limit;
+        private final Runnable overflow;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        HoldOutputStream(OutputStream out, int limit, Runnable overflow) {
+            this.out = out;
+            this.limit = limit;
+            this.overflow = overflow;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (buffer != null && buffer.size() + 1 > limit) {
+                release();
+            }
+            if (buffer != null) {
+                buffer.write(b);
+            } else {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (buffer != null && buffer.size() + len > limit) {
+                release();
+            }
+            if (buffer != null) {
+                buffer.write(b, off, len);
+            } else {
+                out.write(b, off, len);
+            }
+        }
+
+        /**
+         * Mientras se retiene la respuesta no se envia nada.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (buffer == null) {
+                out.flush();
+            }
+        }
+
+        private void release() throws IOException {
+            overflow.run();
+            ByteArrayOutputStream held = buffer;
+            buffer = null;
+            held.writeTo(out);
+        }
+
+        /**
+         * @return la respuesta completa, o null si supero el limite y ya se
+         * envio.
+         */
+        byte[] getBody() {
+            return buffer == null ? null : buffer.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.cac.restfull.database;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.cac.restfull.webservice.AppConstant;
+
+/**
+ * Hilos compartidos para las lecturas que una peticion reparte en varias
+ * consultas: los rangos de {@link ParallelScan} y las consultas de
+ * {@link BatchSelect}. Cada tarea toma su propia conexion del pool, fuera de
+ * los permisos del DBExecutor; por eso cac.exec.threads deja libres por
+ * defecto tantas conexiones como hilos tiene este grupo.
+ *
+ * Las tareas se atienden en el orden recibido. Los hilos terminan despues
+ * de un minuto sin trabajo, por lo que no requiere detenerse.
+ *
+ * @author atorres
+ */
+final class ReadExecutor {
+
+    private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+    private ReadExecutor() {
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(AppConstant.DB_PARALLEL_THREADS,
+                AppConstant.DB_PARALLEL_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "cac-read-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    static void execute(Runnable task) {
+        EXECUTOR.execute(task);
+    }
+}
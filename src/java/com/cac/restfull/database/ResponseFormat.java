@@ -0,0 +1,75 @@
+package com.cac.restfull.database;
+
+import java.util.Locale;
+
+/**
+ * Formato de la respuesta de getDataFromTable.
+ * <ul>
+ * <li>JSON: cada registro es un objeto con el nombre de cada columna.</li>
+ * <li>COMPACT: JSON con la lista "columns" una sola vez y cada registro como
+ * un arreglo con los valores en el mismo orden.</li>
+ * <li>CBOR: la misma estructura de COMPACT en CBOR (RFC 8949); los BLOB se
+ * envian como bytes, sin Base64.</li>
+ * </ul>
+ * Se elige con el campo "format" de la peticion o con el encabezado Accept
+ * (application/cbor, o application/json;format=compact).
+ *
+ * @author atorres
+ */
+public enum ResponseFormat {
+
+    JSON("application/json"),
+    COMPACT("application/json"),
+    CBOR("application/cbor");
+
+    public static final String CBOR_TYPE = "application/cbor";
+
+    private final String mediaType;
+
+    ResponseFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return true si los registros se envian como arreglos de valores.
+     */
+    public boolean isPositional() {
+        return this != JSON;
+    }
+
+    /**
+     * Metodo utilizado para obtener el formato por su nombre.
+     *
+     * @throws IllegalArgumentException si el formato no existe.
+     */
+    public static ResponseFormat fromName(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Formato no soportado: " + name);
+        }
+    }
+
+    /**
+     * Metodo utilizado para elegir el formato segun el encabezado Accept.
+     *
+     * @return JSON si el cliente no pide otro formato.
+     */
+    public static ResponseFormat fromAccept(String accept) {
+        if (accept == null) {
+            return JSON;
+        }
+        String value = accept.toLowerCase(Locale.ROOT);
+        if (value.contains(CBOR_TYPE)) {
+            return CBOR;
+        }
+        if (value.replace(" ", "").contains("format=compact")) {
+            return COMPACT;
+        }
+        return JSON;
+    }
+}
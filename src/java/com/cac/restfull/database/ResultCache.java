@@ -0,0 +1,352 @@
+package com.cac.restfull.database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache en memoria de las respuestas de getDataFromTable.
+ *
+ * Solo se guardan las tablas con un tiempo de vida (TTL) configurado, pensado
+ * para los catalogos que los clientes consultan constantemente. Las entradas
+ * se descartan al vencer su TTL, cuando se supera el limite de memoria (la
+ * menos usada primero) o cuando un insert modifica la tabla.
+ *
+ * La version de cada tabla tambien sirve para las peticiones condicionales,
+ * ver {@link #version(String, String)}.
+ *
+ * @author atorres
+ */
+public class ResultCache {
+
+    private static final Logger LOG = Logger.getLogger(ResultCache.class.getName());
+
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final long defaultTtl;
+    private final Map<String, Long> tableTtl;
+
+    /** Entradas en orden de acceso, la menos usada primero. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes = 0;
+
+    /** Version de cada tabla, cambia con cada invalidacion. */
+    private final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    /** Fecha de la ultima invalidacion de cada tabla. */
+    private final ConcurrentHashMap<String, Long> modified = new ConcurrentHashMap<>();
+    /** Las versiones reinician con el servidor, se distinguen por el arranque. */
+    private final long startedAt = System.currentTimeMillis();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    /**
+     * @param maxBytes memoria maxima ocupada por las respuestas guardadas.
+     * @param maxEntryBytes tamano maximo de una respuesta para guardarse.
+     * @param defaultTtl TTL en milisegundos de las tablas no configuradas, 0
+     * para no guardarlas.
+     * @param tableTtl TTL por tabla con el formato "TABLA:ms,TABLA2:ms".
+     */
+    public ResultCache(long maxBytes, int maxEntryBytes, long defaultTtl, String tableTtl) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.defaultTtl = defaultTtl;
+        this.tableTtl = new HashMap<>();
+        for (String item : tableTtl.split(",")) {
+            int separator = item.lastIndexOf(':');
+            if (separator > 0) {
+                this.tableTtl.put(tableKey(item.substring(0, separator)),
+                        Long.parseLong(item.substring(separator + 1).trim()));
+            }
+        }
+    }
+
+    /**
+     * Metodo utilizado para normalizar el nombre de una tabla, sin esquema y
+     * en mayusculas, para que el select y el insert coincidan.
+     */
+    public static String tableKey(String tableName) {
+        String name = tableName.trim();
+        return name.substring(name.lastIndexOf('.') + 1).toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * @return TTL en milisegundos de la tabla, 0 si no se guarda en cache.
+     */
+    public long getTtl(String table) {
+        Long ttl = tableTtl.get(table);
+        return ttl != null ? ttl : defaultTtl;
+    }
+
+    /**
+     * Metodo utilizado para buscar una respuesta vigente.
+     *
+     * @return la respuesta guardada o null si no existe o ya vencio.
+     */
+    public byte[] get(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return entry.body;
+            }
+            if (entry != null) {
+                remove(key, entry);
+                expirations.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @return version actual de la tabla, se compara al guardar para no
+     * guardar lecturas iniciadas antes de una invalidacion.
+     */
+    public long generation(String table) {
+        return generationOf(table).get();
+    }
+
+    /**
+     * Metodo utilizado para guardar una respuesta, siempre que la tabla no
+     * haya cambiado desde que inicio la lectura.
+     */
+    public void put(String table, String key, byte[] body, long generation) {
+        long ttl = getTtl(table);
+        if (ttl <= 0 || body.length > maxEntryBytes) {
+            return;
+        }
+        synchronized (entries) {
+            if (generation != generation(table)) {
+                return;
+            }
+            Entry previous = entries.put(key, new Entry(table, body, System.currentTimeMillis() + ttl));
+            if (previous != null) {
+                bytes -= previous.body.length;
+            }
+            bytes += body.length;
+
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Entry eldest = it.next().getValue();
+                it.remove();
+                bytes -= eldest.body.length;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Metodo utilizado para descartar las respuestas de una tabla despues de
+     * modificarla.
+     */
+    public void invalidate(String table) {
+        generationOf(table).incrementAndGet();
+        modified.put(table, System.currentTimeMillis());
+        synchronized (entries) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.table.equals(table)) {
+                    it.remove();
+                    bytes -= entry.body.length;
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Metodo utilizado para obtener la version de la respuesta de una
+     * lectura, sin leer la tabla. El ETag se forma con el arranque del
+     * servidor, la version de la tabla, el periodo de TTL en curso y la llave
+     * de la peticion, de modo que cambia con cada insert del servicio y, como
+     * el cache, a mas tardar al cumplirse el TTL (para los cambios hechos por
+     * fuera del servicio).
+     *
+     * La version se toma antes de leer: si un insert llega durante la
+     * lectura, el cliente recibe el ETag anterior y en la siguiente consulta
+     * descarga de nuevo la tabla.
+     *
+     * @param table nombre normalizado, ver {@link #tableKey(String)}.
+     * @param key llave de la peticion, ver {@link SelectRequest#getCacheKey()}.
+     * @return la version, o null si la tabla no tiene TTL configurado.
+     */
+    public TableVersion version(String table, String key) {
+        long ttl = getTtl(table);
+        if (ttl <= 0) {
+            return null;
+        }
+        long generation = generation(table);
+        long now = System.currentTimeMillis();
+        long period = now / ttl;
+        Long changed = modified.get(table);
+        long lastModified = Math.max(changed != null ? changed : startedAt, period * ttl);
+
+        String tag = Long.toString(startedAt, 36) + '-' + generation + '-' + Long.toString(period, 36)
+                + '-' + Integer.toHexString(key.hashCode());
+        return new TableVersion(tag, lastModified);
+    }
+
+    /**
+     * Metodo utilizado para contar las peticiones respondidas con 304, sin
+     * enviar la tabla.
+     */
+    public void recordNotModified() {
+        notModified.incrementAndGet();
+    }
+
+    /**
+     * Metodo utilizado para envolver una lectura de la base de datos, de modo
+     * que la respuesta se copie al cache mientras se escribe al cliente.
+     */
+    public TableResult cacheOnWrite(TableResult source, String table, String key) {
+        long generation = generation(table);
+        return new TableResult() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                CopyOutputStream copy = new CopyOutputStream(out, maxEntryBytes);
+                source.write(copy);
+                if (!copy.overflow) {
+                    put(table, key, copy.buffer.toByteArray(), generation);
+                } else {
+                    LOG.log(Level.FINE, "Respuesta de {0} muy grande para el cache", table);
+                }
+            }
+
+            @Override
+            public void close() {
+                source.close();
+            }
+        };
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    private AtomicLong generationOf(String table) {
+        AtomicLong generation = generations.get(table);
+        if (generation == null) {
+            generations.putIfAbsent(table, new AtomicLong());
+            generation = generations.get(table);
+        }
+        return generation;
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        bytes -= entry.body.length;
+    }
+
+    private static final class Entry {
+
+        private final String table;
+        private final byte[] body;
+        private final long expiresAt;
+
+        Entry(String table, byte[] body, long expiresAt) {
+            this.table = table;
+            this.body = body;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Escribe en la salida del cliente y guarda una copia mientras no supere
+     * el tamano maximo de una entrada.
+     */
+    private static final class CopyOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final int limit;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private boolean overflow = false;
+
+        CopyOutputStream(OutputStream out, int limit) {
+            this.out = out;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (!overflow) {
+                if (buffer.size() + 1 > limit) {
+                    overflow = true;
+                    buffer.reset();
+                } else {
+                    buffer.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (!overflow) {
+                if (buffer.size() + len > limit) {
+                    overflow = true;
+                    buffer.reset();
+                } else {
+                    buffer.write(b, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
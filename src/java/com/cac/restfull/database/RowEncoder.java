@@ -0,0 +1,113 @@
+package com.cac.restfull.database;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+
+/**
+ * Escritura de la respuesta de getDataFromTable en el formato solicitado,
+ * ver {@link ResponseFormat}. El {@link RowPlan} lee cada valor del ResultSet
+ * y lo entrega al metodo del tipo correspondiente.
+ *
+ * El orden de las llamadas es: start, por cada registro startRow, un valor
+ * por columna y endRow, y al final end. Los bytes se acumulan en un buffer
+ * propio que se envia a la salida al llenarse y al terminar.
+ *
+ * @author atorres
+ */
+abstract class RowEncoder {
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[8192];
+    private int position = 0;
+
+    RowEncoder(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Metodo utilizado para crear el encoder del formato sobre la salida.
+     */
+    static RowEncoder create(ResponseFormat format, OutputStream out) {
+        switch (format) {
+            case CBOR:
+                return new CborRowEncoder(out);
+            case COMPACT:
+                return new JsonRowEncoder(out, false);
+            default:
+                return new JsonRowEncoder(out, true);
+        }
+    }
+
+    /**
+     * Metodo utilizado para escribir el encabezado de la respuesta hasta el
+     * inicio de los registros.
+     */
+    abstract void start(String tableName, RowPlan plan) throws IOException;
+
+    abstract void startRow() throws IOException;
+
+    abstract void endRow() throws IOException;
+
+    /**
+     * @param paged true si la respuesta incluye nextCursor.
+     * @param nextCursor cursor de la siguiente pagina, null en la ultima.
+     */
+    abstract void end(boolean paged, String nextCursor) throws IOException;
+
+    /*
+     * Valores del registro actual; column es la posicion de la columna en la
+     * peticion, desde 0.
+     */
+    abstract void writeNull(int column) throws IOException;
+
+    abstract void writeString(int column, String value) throws IOException;
+
+    abstract void writeLong(int column, long value) throws IOException;
+
+    abstract void writeDecimal(int column, BigDecimal value) throws IOException;
+
+    abstract void writeDouble(int column, double value) throws IOException;
+
+    abstract void writeBoolean(int column, boolean value) throws IOException;
+
+    abstract void writeBinary(int column, byte[] value) throws IOException;
+
+    final void write(int b) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    final void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    final void write(byte[] b, int off, int len) throws IOException {
+        if (len > buffer.length - position) {
+            drain();
+            if (len > buffer.length) {
+                out.write(b, off, len);
+                return;
+            }
+        }
+        System.arraycopy(b, off, buffer, position, len);
+        position += len;
+    }
+
+    /**
+     * Metodo utilizado para enviar el buffer y hacer flush de la salida.
+     */
+    final void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.cac.restfull.database;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Plan de lectura de los registros de una consulta, compilado una sola vez
+ * por sentencia y compartido entre peticiones. Contiene el tipo de cada
+ * columna, ver {@link ColumnType}, y los nombres de las columnas ya
+ * codificados en JSON y CBOR, de modo que por cada valor solo se llama al
+ * getter del tipo por posicion y se copian los bytes de la llave.
+ *
+ * La instancia es inmutable.
+ *
+ * @author atorres
+ */
+final class RowPlan {
+
+    private final ColumnType[] types;
+    /** Llave de cada columna en JSON, "nombre": con la coma previa desde la segunda. */
+    private final byte[][] jsonKeys;
+    /** Arreglo JSON con los nombres de las columnas. */
+    private final byte[] jsonColumns;
+    /** Arreglo CBOR con los nombres de las columnas. */
+    private final byte[] cborColumns;
+
+    private RowPlan(ColumnType[] types, byte[][] jsonKeys, byte[] jsonColumns, byte[] cborColumns) {
+        this.types = types;
+        this.jsonKeys = jsonKeys;
+        this.jsonColumns = jsonColumns;
+        this.cborColumns = cborColumns;
+    }
+
+    /**
+     * Metodo utilizado para compilar el plan de las columnas solicitadas,
+     * que ocupan las primeras posiciones del ResultSet.
+     */
+    static RowPlan compile(String[] columns, ResultSetMetaData metaData) throws SQLException {
+        ColumnType[] types = new ColumnType[columns.length];
+        byte[][] jsonKeys = new byte[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            types[i] = ColumnType.of(metaData, i + 1);
+            jsonKeys[i] = JsonRowEncoder.encodeKey(columns[i], i > 0);
+        }
+        return new RowPlan(types, jsonKeys, JsonRowEncoder.encodeNames(columns),
+                CborRowEncoder.encodeNames(columns));
+    }
+
+    int size() {
+        return types.length;
+    }
+
+    byte[] getJsonKey(int index) {
+        return jsonKeys[index];
+    }
+
+    byte[] getJsonColumns() {
+        return jsonColumns;
+    }
+
+    byte[] getCborColumns() {
+        return cborColumns;
+    }
+
+    /**
+     * Metodo utilizado para escribir el registro actual del ResultSet.
+     */
+    void writeRow(ResultSet rs, RowEncoder encoder) throws SQLException, IOException {
+        encoder.startRow();
+        for (int j = 0; j < types.length; j++) {
+            int column = j + 1;
+            switch (types[j]) {
+                case LONG: {
+                    long value = rs.getLong(column);
+                    if (rs.wasNull()) {
+                        encoder.writeNull(j);
+                    } else {
+                        encoder.writeLong(j, value);
+                    }
+                    break;
+                }
+                case DECIMAL: {
+                    BigDecimal value = rs.getBigDecimal(column);
+                    if (value == null) {
+                        encoder.writeNull(j);
+                    } else {
+                        encoder.writeDecimal(j, value);
+                    }
+                    break;
+                }
+                case DOUBLE: {
+                    double value = rs.getDouble(column);
+                    if (rs.wasNull()) {
+                        encoder.writeNull(j);
+                    } else {
+                        encoder.writeDouble(j, value);
+                    }
+                    break;
+                }
+                case BOOLEAN: {
+                    boolean value = rs.getBoolean(column);
+                    if (rs.wasNull()) {
+                        encoder.writeNull(j);
+                    } else {
+                        encoder.writeBoolean(j, value);
+                    }
+                    break;
+                }
+                case TIMESTAMP: {
+                    Timestamp value = rs.getTimestamp(column);
+                    if (value == null) {
+                        encoder.writeNull(j);
+                    } else {
+                        encoder.writeLong(j, value.getTime());
+                    }
+                    break;
+                }
+                case BINARY: {
+                    byte[] value = rs.getBytes(column);
+                    if (value == null) {
+                        encoder.writeNull(j);
+                    } else {
+                        encoder.writeBinary(j, value);
+                    }
+                    break;
+                }
+                default: {
+                    String value = rs.getString(column);
+                    if (value == null) {
+                        encoder.writeNull(j);
+                    } else {
+                        encoder.writeString(j, value);
+                    }
+                }
+            }
+        }
+        encoder.endRow();
+    }
+
+    /**
+     * Metodo utilizado para copiar los valores del registro actual, para
+     * escribirlos despues en otro hilo con {@link #writeValues}. Las fechas se
+     * guardan en milisegundos.
+     */
+    Object[] readRow(ResultSet rs) throws SQLException {
+        Object[] values = new Object[types.length];
+        for (int j = 0; j < types.length; j++) {
+            int column = j + 1;
+            Object value;
+            switch (types[j]) {
+                case LONG:
+                    value = rs.getLong(column);
+                    break;
+                case DECIMAL:
+                    value = rs.getBigDecimal(column);
+                    break;
+                case DOUBLE:
+                    value = rs.getDouble(column);
+                    break;
+                case BOOLEAN:
+                    value = rs.getBoolean(column);
+                    break;
+                case TIMESTAMP:
+                    Timestamp timestamp = rs.getTimestamp(column);
+                    value = timestamp == null ? null : timestamp.getTime();
+                    break;
+                case BINARY:
+                    value = rs.getBytes(column);
+                    break;
+                default:
+                    value = rs.getString(column);
+            }
+            values[j] = rs.wasNull() ? null : value;
+        }
+        return values;
+    }
+
+    /**
+     * Metodo utilizado para escribir un registro copiado con
+     * {@link #readRow}.
+     */
+    void writeValues(Object[] values, RowEncoder encoder) throws IOException {
+        encoder.startRow();
+        for (int j = 0; j < types.length; j++) {
+            Object value = values[j];
+            if (value == null) {
+                encoder.writeNull(j);
+                continue;
+            }
+            switch (types[j]) {
+                case LONG:
+                case TIMESTAMP:
+                    encoder.writeLong(j, (Long) value);
+                    break;
+                case DECIMAL:
+                    encoder.writeDecimal(j, (BigDecimal) value);
+                    break;
+                case DOUBLE:
+                    encoder.writeDouble(j, (Double) value);
+                    break;
+                case BOOLEAN:
+                    encoder.writeBoolean(j, (Boolean) value);
+                    break;
+                case BINARY:
+                    encoder.writeBinary(j, (byte[]) value);
+                    break;
+                default:
+                    encoder.writeString(j, (String) value);
+            }
+        }
+        encoder.endRow();
+    }
+
+    /**
+     * Cache de los planes por consulta, para no consultar el
+     * ResultSetMetaData ni codificar los nombres en cada peticion.
+     */
+    static final class Cache {
+
+        private final int maxSize;
+        private final ConcurrentHashMap<String, RowPlan> plans = new ConcurrentHashMap<>();
+
+        Cache(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * @param sql texto de la consulta, identifica la tabla y las columnas.
+         * @param columns columnas solicitadas por el cliente.
+         */
+        RowPlan get(String sql, String[] columns, ResultSet rs) throws SQLException {
+            RowPlan plan = plans.get(sql);
+            if (plan == null) {
+                plan = compile(columns, rs.getMetaData());
+                if (plans.size() >= maxSize) {
+                    plans.clear();
+                }
+                plans.put(sql, plan);
+            }
+            return plan;
+        }
+    }
+}
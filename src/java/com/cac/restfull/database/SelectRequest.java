@@ -0,0 +1,315 @@
+package com.cac.restfull.database;
+
+import java.util.regex.Pattern;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import com.cac.restfull.webservice.AppConstant;
+
+/**
+ * Peticion de lectura de una tabla, segun el formato recibido en
+ * getDataFromTable:
+ * {"tableName":"table name", "columns": JsonArray[column1, column2, n...],
+ * "whereCondition" : "condition1 = ? and condition2 = ? ...",
+ * "whereValues" : JsonArray[ParamValue1, ParamValue2, n...],
+ * "orderBy" : JsonArray[key1, key2, n...], "pageSize" : 500,
+ * "after" : "cursor", "fetchSize" : 500, "format" : "compact",
+ * "parallel" : 4, "splitBy" : "ID", "ordered" : false}
+ *
+ * Los campos orderBy, pageSize, after, fetchSize, format, parallel, splitBy y
+ * ordered son opcionales. Para
+ * paginar se indica pageSize junto con orderBy, que debe ser una llave unica
+ * y no nula; la siguiente pagina se pide enviando en after el valor de
+ * nextCursor de la respuesta anterior. El campo format indica el formato de
+ * la respuesta, ver {@link ResponseFormat}.
+ *
+ * Para exportar tablas grandes se indica parallel junto con splitBy, una
+ * columna numerica: la lectura se divide en rangos de la llave que se leen al
+ * mismo tiempo, cada uno en su conexion, ver {@link ParallelScan}. Con
+ * ordered los registros salen ordenados por la llave; sin el, en el orden en
+ * que llegan. No se combina con la paginacion ni con orderBy.
+ *
+ * @author atorres
+ */
+public class SelectRequest {
+
+    static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z][A-Za-z0-9_$#.]*");
+
+    private final String tableName;
+    private final String[] columns;
+    private final String whereCondition;
+    private final JsonArray whereValues;
+    private final String[] orderBy;
+    private final int pageSize;
+    private final String after;
+    private final int fetchSize;
+    private final ResponseFormat format;
+    private final int parallel;
+    private final String splitBy;
+    private final boolean ordered;
+
+    public SelectRequest(String tableName, String[] columns, String whereCondition,
+            JsonArray whereValues, String[] orderBy, int pageSize, String after, int fetchSize) {
+        this(tableName, columns, whereCondition, whereValues, orderBy, pageSize, after, fetchSize,
+                ResponseFormat.JSON);
+    }
+
+    public SelectRequest(String tableName, String[] columns, String whereCondition,
+            JsonArray whereValues, String[] orderBy, int pageSize, String after, int fetchSize,
+            ResponseFormat format) {
+        this(tableName, columns, whereCondition, whereValues, orderBy, pageSize, after, fetchSize,
+                format, 1, null, false);
+    }
+
+    private SelectRequest(String tableName, String[] columns, String whereCondition,
+            JsonArray whereValues, String[] orderBy, int pageSize, String after, int fetchSize,
+            ResponseFormat format, int parallel, String splitBy, boolean ordered) {
+        this.tableName = tableName;
+        this.columns = columns;
+        this.whereCondition = whereCondition;
+        this.whereValues = whereValues;
+        this.orderBy = orderBy == null ? new String[0] : orderBy;
+        this.pageSize = pageSize;
+        this.after = after;
+        this.fetchSize = fetchSize;
+        this.format = format == null ? ResponseFormat.JSON : format;
+        this.parallel = parallel;
+        this.splitBy = splitBy;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Metodo utilizado para obtener la misma peticion leida en paralelo.
+     *
+     * @param parallel cantidad de rangos, 1 para leer en serie.
+     * @param splitBy columna numerica que divide los rangos.
+     * @param ordered true para enviar los registros ordenados por la llave.
+     * @throws IllegalArgumentException en caso de que los campos no sean
+     * validos.
+     */
+    public SelectRequest parallel(int parallel, String splitBy, boolean ordered) {
+        return new SelectRequest(tableName, columns, whereCondition, whereValues, orderBy, pageSize,
+                after, fetchSize, format, parallel, splitBy, ordered).validate();
+    }
+
+    /**
+     * Metodo utilizado para leer la peticion desde el JSON del cliente.
+     *
+     * @param obj JSON con el formato indicado en la clase.
+     * @throws IllegalArgumentException en caso de que los campos de
+     * paginacion no sean validos.
+     */
+    public static SelectRequest fromJson(JsonObject obj) {
+        return fromJson(obj, ResponseFormat.JSON);
+    }
+
+    /**
+     * Metodo utilizado para leer la peticion desde el JSON del cliente.
+     *
+     * @param obj JSON con el formato indicado en la clase.
+     * @param defaultFormat formato de la respuesta si la peticion no incluye
+     * el campo format, por ejemplo el indicado en el encabezado Accept.
+     * @throws IllegalArgumentException en caso de que los campos de
+     * paginacion o el formato no sean validos.
+     */
+    public static SelectRequest fromJson(JsonObject obj, ResponseFormat defaultFormat) {
+        String tableName = obj.getString("tableName");
+        String[] columns = toStringArray(obj.getJsonArray("columns"));
+
+        String whereCondition = null;
+        JsonArray whereValues = null;
+        if (obj.containsKey("whereCondition")) {
+            whereCondition = obj.getString("whereCondition");
+            whereValues = obj.getJsonArray("whereValues");
+        }
+
+        String[] orderBy = null;
+        JsonValue order = obj.get("orderBy");
+        if (order instanceof JsonArray) {
+            orderBy = toStringArray((JsonArray) order);
+        } else if (order instanceof JsonString) {
+            orderBy = ((JsonString) order).getString().trim().split("\\s*,\\s*");
+        }
+
+        int pageSize = getInt(obj, "pageSize", 0);
+        String after = obj.containsKey("after") && !obj.isNull("after") ? obj.getString("after") : null;
+        int fetchSize = getInt(obj, "fetchSize", AppConstant.DB_FETCH_SIZE);
+        ResponseFormat format = obj.containsKey("format") && !obj.isNull("format")
+                ? ResponseFormat.fromName(obj.getString("format")) : defaultFormat;
+
+        int parallel = getInt(obj, "parallel", 1);
+        String splitBy = obj.containsKey("splitBy") && !obj.isNull("splitBy") ? obj.getString("splitBy") : null;
+        boolean ordered = getBoolean(obj, "ordered");
+
+        return new SelectRequest(tableName, columns, whereCondition, whereValues,
+                orderBy, pageSize, after, fetchSize, format, parallel, splitBy, ordered).validate();
+    }
+
+    private SelectRequest validate() {
+        if (pageSize < 0) {
+            throw new IllegalArgumentException("pageSize debe ser mayor que cero.");
+        }
+        if ((pageSize > 0 || after != null) && orderBy.length == 0) {
+            throw new IllegalArgumentException("Para paginar se requiere orderBy con una llave unica.");
+        }
+        for (String key : orderBy) {
+            if (!IDENTIFIER.matcher(key).matches()) {
+                throw new IllegalArgumentException("Columna no valida en orderBy: " + key);
+            }
+        }
+        if (parallel < 1) {
+            throw new IllegalArgumentException("parallel debe ser mayor que cero.");
+        }
+        if (parallel > 1) {
+            if (splitBy == null || !IDENTIFIER.matcher(splitBy).matches()) {
+                throw new IllegalArgumentException("Para leer en paralelo se requiere splitBy con una columna numerica.");
+            }
+            if (pageSize > 0 || after != null || orderBy.length > 0) {
+                throw new IllegalArgumentException("La lectura en paralelo no admite paginacion ni orderBy.");
+            }
+        }
+        return this;
+    }
+
+    private static String[] toStringArray(JsonArray array) {
+        String[] values = new String[array.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.getString(i);
+        }
+        return values;
+    }
+
+    /**
+     * Los clientes envian los numeros tanto como numero como texto.
+     */
+    private static int getInt(JsonObject obj, String key, int defaultValue) {
+        JsonValue value = obj.get(key);
+        if (value instanceof JsonNumber) {
+            return ((JsonNumber) value).intValue();
+        } else if (value instanceof JsonString) {
+            return Integer.parseInt(((JsonString) value).getString().trim());
+        }
+        return defaultValue;
+    }
+
+    private static boolean getBoolean(JsonObject obj, String key) {
+        JsonValue value = obj.get(key);
+        if (value instanceof JsonString) {
+            return Boolean.parseBoolean(((JsonString) value).getString().trim());
+        }
+        return value == JsonValue.TRUE;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return la condicion del select, o null si la peticion no la incluye.
+     */
+    public String getWhereCondition() {
+        return whereCondition;
+    }
+
+    public JsonArray getWhereValues() {
+        return whereValues;
+    }
+
+    public String[] getOrderBy() {
+        return orderBy;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public String getAfter() {
+        return after;
+    }
+
+    /**
+     * @return cantidad de registros por viaje a la base de datos, sin superar
+     * el maximo configurado ni el tamano de la pagina.
+     */
+    public int getFetchSize() {
+        int size = Math.min(Math.max(fetchSize, 1), AppConstant.DB_MAX_FETCH_SIZE);
+        return isPaged() ? Math.min(size, pageSize + 1) : size;
+    }
+
+    public ResponseFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return cantidad de rangos de la lectura, sin superar el maximo
+     * configurado; 1 si se lee en serie.
+     */
+    public int getParallel() {
+        return Math.max(Math.min(parallel, AppConstant.DB_MAX_PARALLEL), 1);
+    }
+
+    public boolean isParallel() {
+        return getParallel() > 1;
+    }
+
+    public String getSplitBy() {
+        return splitBy;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    public boolean isPaged() {
+        return pageSize > 0;
+    }
+
+    /**
+     * @return nombre normalizado de la tabla, ver {@link ResultCache#tableKey(String)}.
+     */
+    public String getTableKey() {
+        return ResultCache.tableKey(tableName);
+    }
+
+    /**
+     * Metodo utilizado para formar la llave de la peticion en el cache de
+     * respuestas. Dos peticiones con la misma llave devuelven el mismo
+     * resultado; el fetchSize no forma parte de la llave, el formato si.
+     */
+    public String getCacheKey() {
+        StringBuilder key = new StringBuilder(tableName.trim());
+        key.append('\u0001');
+        for (String column : columns) {
+            key.append(column).append(',');
+        }
+        key.append('\u0001');
+        if (whereCondition != null) {
+            key.append('?').append(whereCondition.trim().replaceAll("\\s+", " "));
+        }
+        key.append('\u0001');
+        if (whereValues != null) {
+            for (int i = 0; i < whereValues.size(); i++) {
+                key.append(whereValues.get(i).toString().replaceAll("\"", "")).append('\u0002');
+            }
+        }
+        key.append('\u0001');
+        for (String order : orderBy) {
+            key.append(order).append(',');
+        }
+        key.append('\u0001').append(pageSize).append('\u0001');
+        if (after != null) {
+            key.append(after);
+        }
+        key.append('\u0001').append(format.name());
+        if (isParallel() && ordered) {
+            key.append('\u0001').append(splitBy);
+        }
+        return key.toString();
+    }
+}
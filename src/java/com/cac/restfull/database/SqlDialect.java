@@ -0,0 +1,166 @@
+package com.cac.restfull.database;
+
+import java.util.Properties;
+import com.cac.restfull.webservice.AppConstant;
+
+/**
+ * Diferencias de SQL entre bases de datos: configuracion de las conexiones,
+ * consulta de prueba, paginacion, inserts de varios registros y secuencias.
+ *
+ * El dialecto se elige con -Dcac.db.dialect (oracle o standard) o, si no se
+ * indica, segun la url de conexion.
+ *
+ * @author atorres
+ */
+public abstract class SqlDialect {
+
+    private static volatile SqlDialect instance;
+
+    /**
+     * @return el dialecto de la base de datos configurada en
+     * {@link AppConstant#URL}.
+     */
+    public static SqlDialect getInstance() {
+        SqlDialect current = instance;
+        if (current == null) {
+            current = forUrl(AppConstant.URL);
+            instance = current;
+        }
+        return current;
+    }
+
+    /**
+     * Metodo utilizado para obtener el dialecto de una url de conexion,
+     * respetando el indicado en cac.db.dialect.
+     */
+    public static SqlDialect forUrl(String url) {
+        String name = AppConstant.DB_DIALECT.trim();
+        if (name.isEmpty()) {
+            name = url != null && url.startsWith("jdbc:oracle:") ? "oracle" : "standard";
+        }
+        switch (name.toLowerCase()) {
+            case "oracle":
+                return new OracleDialect();
+            case "standard":
+                return new StandardDialect();
+            default:
+                throw new IllegalArgumentException("Dialecto no soportado: " + name);
+        }
+    }
+
+    /**
+     * @return clase del driver a cargar, o null si el driver se registra
+     * solo (JDBC 4).
+     */
+    public abstract String getDriverClass();
+
+    /**
+     * Metodo utilizado para formar las propiedades con las que se abren las
+     * conexiones del pool.
+     */
+    public Properties getConnectionProperties(String user, String pass) {
+        Properties properties = new Properties();
+        properties.setProperty("user", user);
+        properties.setProperty("password", pass);
+        return properties;
+    }
+
+    /**
+     * @return consulta de /isOnline, devuelve la columna DUMMY con el texto
+     * connected.
+     */
+    public abstract String getHealthQuery();
+
+    /**
+     * @return consulta con la que el pool valida las conexiones.
+     */
+    public abstract String getValidationQuery();
+
+    /**
+     * Metodo utilizado para limitar la cantidad de registros de un select.
+     * El limite se envia como el ultimo parametro.
+     */
+    public abstract String limit(String select);
+
+    /**
+     * @return consulta que devuelve el siguiente valor de la secuencia.
+     */
+    public abstract String nextValue(String sequence);
+
+    /**
+     * @return true si el driver acepta streams sin indicar el tamano
+     * (setBinaryStream de JDBC 4).
+     */
+    public abstract boolean supportsUnknownLengthStreams();
+
+    /**
+     * @return registros que se envian en cada insert de varios registros, 1
+     * si el lote de JDBC es la forma mas rapida en esta base de datos. Se
+     * puede cambiar con -Dcac.db.rowsPerInsert.
+     */
+    public int getRowsPerInsert() {
+        return AppConstant.DB_ROWS_PER_INSERT > 0 ? AppConstant.DB_ROWS_PER_INSERT : getDefaultRowsPerInsert();
+    }
+
+    protected abstract int getDefaultRowsPerInsert();
+
+    /**
+     * @return parametros que admite una sentencia.
+     */
+    public abstract int getMaxParameters();
+
+    /**
+     * Metodo utilizado para convertir un insert de un registro, con el
+     * formato "insert into tabla (columnas) values (?,...)", en un insert de
+     * varios registros. Los parametros de cada registro van uno tras otro.
+     */
+    public abstract String multiRowInsert(String insertSql, int rows);
+
+    /**
+     * Metodo utilizado para formar la consulta del menor y el mayor valor de
+     * la llave con la que se divide una lectura en paralelo.
+     *
+     * @param whereCondition condicion de la peticion, o null.
+     */
+    public String keyBounds(String table, String key, String whereCondition) {
+        StringBuilder sql = new StringBuilder("select min(").append(key).append("),max(")
+                .append(key).append(") from ").append(table);
+        if (whereCondition != null && !whereCondition.isEmpty()) {
+            sql.append(" where ").append(whereCondition);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Metodo utilizado para formar la condicion de un rango de la llave. El
+     * primer rango no tiene limite inferior y el ultimo no tiene limite
+     * superior e incluye los nulos, de modo que los rangos cubren la tabla
+     * completa aunque cambie durante la lectura.
+     *
+     * @param lower true si el rango tiene limite inferior (llave &gt;= ?).
+     * @param upper true si el rango tiene limite superior (llave &lt; ?).
+     */
+    public String keyRange(String key, boolean lower, boolean upper) {
+        if (lower && upper) {
+            return key + " >= ? and " + key + " < ?";
+        } else if (upper) {
+            return key + " < ?";
+        } else if (lower) {
+            return "(" + key + " >= ? or " + key + " is null)";
+        }
+        return "1 = 1";
+    }
+
+    /**
+     * Metodo utilizado para separar un insert de un registro en la parte
+     * "insert into tabla (columnas)" y la lista de valores "(?,...)".
+     */
+    static String[] splitInsert(String insertSql) {
+        int values = insertSql.toLowerCase().lastIndexOf(" values ");
+        if (values < 0) {
+            throw new IllegalArgumentException("Insert no soportado: " + insertSql);
+        }
+        return new String[]{insertSql.substring(0, values).trim(),
+            insertSql.substring(values + " values ".length()).trim()};
+    }
+}
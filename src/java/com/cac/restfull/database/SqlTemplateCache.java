@@ -0,0 +1,95 @@
+package com.cac.restfull.database;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache acotado (LRU) del texto SQL generado para cada forma de peticion.
+ *
+ * La llave se forma con la operacion, la tabla, las columnas y la forma de
+ * la condicion, de modo que las peticiones repetidas reutilizan el mismo
+ * texto sin volver a construirlo. Al ser identico, el texto tambien
+ * aprovecha el cache de statements de cada conexion del pool.
+ *
+ * @author atorres
+ */
+public class SqlTemplateCache {
+
+    private final Map<Key, String> templates;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SqlTemplateCache(final int maxSize) {
+        this.templates = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Metodo utilizado para obtener el SQL de una forma de peticion,
+     * construyendolo solo la primera vez.
+     *
+     * @param builder construye el SQL cuando no esta en el cache.
+     * @param parts operacion, tabla, columnas y demas valores que determinan
+     * el texto del SQL. Los arreglos se comparan por contenido.
+     */
+    public String get(Supplier<String> builder, Object... parts) {
+        Key key = new Key(parts);
+        String sql;
+        synchronized (templates) {
+            sql = templates.get(key);
+        }
+        if (sql != null) {
+            hits.incrementAndGet();
+            return sql;
+        }
+        misses.incrementAndGet();
+        sql = builder.get();
+        synchronized (templates) {
+            templates.put(key, sql);
+        }
+        return sql;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+
+    private static final class Key {
+
+        private final Object[] parts;
+        private final int hash;
+
+        Key(Object[] parts) {
+            this.parts = parts;
+            this.hash = Arrays.deepHashCode(parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && hash == ((Key) obj).hash
+                    && Arrays.deepEquals(parts, ((Key) obj).parts);
+        }
+    }
+}
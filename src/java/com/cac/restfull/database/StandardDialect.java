@@ -0,0 +1,70 @@
+package com.cac.restfull.database;
+
+/**
+ * Dialecto para bases de datos que siguen el estandar SQL en paginacion,
+ * secuencias y valores de varios registros, como H2, HSQLDB, Derby,
+ * PostgreSQL o SQL Server.
+ *
+ * Los inserts se envian con varios registros en el VALUES de cada sentencia,
+ * lo que reduce la cantidad de sentencias que ejecuta la base de datos.
+ *
+ * @author atorres
+ */
+class StandardDialect extends SqlDialect {
+
+    @Override
+    public String getDriverClass() {
+        return null;
+    }
+
+    @Override
+    public String getHealthQuery() {
+        return "select 'connected' AS DUMMY";
+    }
+
+    @Override
+    public String getValidationQuery() {
+        return "select 1";
+    }
+
+    @Override
+    public String limit(String select) {
+        return select + " fetch first ? rows only";
+    }
+
+    @Override
+    public String nextValue(String sequence) {
+        return "SELECT NEXT VALUE FOR " + sequence;
+    }
+
+    @Override
+    public boolean supportsUnknownLengthStreams() {
+        return true;
+    }
+
+    @Override
+    protected int getDefaultRowsPerInsert() {
+        return 50;
+    }
+
+    /**
+     * Limite de SQL Server, el menor de las bases soportadas.
+     */
+    @Override
+    public int getMaxParameters() {
+        return 2000;
+    }
+
+    @Override
+    public String multiRowInsert(String insertSql, int rows) {
+        String[] parts = splitInsert(insertSql);
+        StringBuilder sql = new StringBuilder(parts[0]).append(" values ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(',');
+            }
+            sql.append(parts[1]);
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package com.cac.restfull.database;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Respuesta de getDataFromTable lista para escribirse en la salida, ya sea
+ * leida de la base de datos o tomada del cache.
+ *
+ * @author atorres
+ */
+public interface TableResult {
+
+    /**
+     * Metodo utilizado para escribir la respuesta JSON en la salida.
+     *
+     * @param out salida donde se escribe la respuesta en UTF-8.
+     * @throws IOException error al escribir o al leer los registros.
+     */
+    void write(OutputStream out) throws IOException;
+
+    /**
+     * Metodo utilizado para liberar los recursos cuando la respuesta no se
+     * llega a escribir.
+     */
+    default void close() {
+    }
+
+    /**
+     * @return false si la respuesta no usa una conexion mientras se escribe
+     * (por ejemplo, la que espera la respuesta de otra lectura), de modo que
+     * el DBExecutor no retiene su permiso durante la escritura.
+     */
+    default boolean holdsConnection() {
+        return true;
+    }
+}
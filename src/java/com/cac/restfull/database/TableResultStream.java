@@ -0,0 +1,149 @@
+package com.cac.restfull.database;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.cac.restfull.webservice.ServiceLog;
+
+/**
+ * Resultado de una consulta de getDataFromTable que se escribe
+ * directamente desde el ResultSet hacia la salida, sin construir la
+ * respuesta completa en memoria.
+ *
+ * La instancia es duena de la conexion, el statement y el ResultSet, y los
+ * libera al terminar {@link #write(OutputStream)} o al llamar
+ * {@link #close()}. Formato de la respuesta:
+ * { "tag" : "response", "status" : true, "tableName" : "table name",
+ * "rows" : JsonArray[JsonObject{"key":"value","key1":"value1"}],
+ * "nextCursor" : "cursor"}
+ *
+ * El campo nextCursor solo se envia en las lecturas paginadas y es null
+ * cuando no hay mas registros. Cada registro se lee con el {@link RowPlan}
+ * de la consulta y se escribe en el formato de la peticion, ver
+ * {@link ResponseFormat}.
+ *
+ * @author atorres
+ */
+public class TableResultStream implements TableResult {
+
+    private static final Logger LOG = Logger.getLogger(TableResultStream.class.getName());
+
+    private final String tableName;
+    private final String tableKey;
+    private final String sql;
+    private final String[] columns;
+    private final RowPlan.Cache plans;
+    private final String[] orderBy;
+    private final int pageSize;
+    private final ResponseFormat format;
+    private final Connection con;
+    private final PreparedStatement ps;
+    private final ResultSet rs;
+
+    TableResultStream(SelectRequest request, String sql, RowPlan.Cache plans,
+            Connection con, PreparedStatement ps, ResultSet rs) {
+        this.tableName = request.getTableName();
+        this.tableKey = request.getTableKey();
+        this.sql = sql;
+        this.columns = request.getColumns();
+        this.plans = plans;
+        this.orderBy = request.getOrderBy();
+        this.pageSize = request.getPageSize();
+        this.format = request.getFormat();
+        this.con = con;
+        this.ps = ps;
+        this.rs = rs;
+    }
+
+    /**
+     * Metodo utilizado para escribir la respuesta en la salida indicada. Si
+     * ocurre un error a mitad de la escritura la respuesta queda incompleta y
+     * se lanza la excepcion.
+     *
+     * @param out salida donde se escribe la respuesta en el formato de la
+     * peticion.
+     * @throws IOException error al escribir o al leer el ResultSet.
+     */
+    @Override
+    public void write(OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        CountingOutputStream counter = new CountingOutputStream(out);
+        boolean error = true;
+        int count = 0;
+        try {
+            RowPlan plan = plans.get(sql, columns, rs);
+
+            RowEncoder encoder = RowEncoder.create(format, counter);
+            encoder.start(tableName, plan);
+
+            String nextCursor = null;
+            while (rs.next()) {
+                plan.writeRow(rs, encoder);
+                count++;
+
+                if (count == pageSize) {
+                    // Solo se forma el cursor si existe el registro adicional.
+                    String cursor = KeysetCursor.encode(rs, orderBy);
+                    if (rs.next()) {
+                        nextCursor = cursor;
+                    }
+                    break;
+                }
+            }
+            encoder.end(pageSize > 0, nextCursor);
+            error = false;
+
+            int sent = count;
+            ServiceLog.log(LOG, Level.INFO, ServiceLog.ROWS, () -> "Registros enviados de " + tableName + ": " + sent);
+        } catch (SQLException ex) {
+            LOG.log(Level.SEVERE, "Error leyendo " + tableName + " despues de " + count + " registros", ex);
+            throw new IOException(ex);
+        } finally {
+            close();
+            Metrics metrics = Metrics.getInstance();
+            metrics.getJsonEncoding().recordNanos(System.nanoTime() - start);
+            Metrics.OperationStats stats = metrics.table(tableKey);
+            stats.record(start, error);
+            stats.addSent(count, counter.count);
+        }
+    }
+
+    /**
+     * Metodo utilizado para liberar el statement y devolver la conexion al
+     * pool sin escribir la respuesta.
+     */
+    @Override
+    public void close() {
+        DBConnection.close(ps, con);
+    }
+
+    /**
+     * Cuenta los bytes escritos en la respuesta.
+     */
+    static final class CountingOutputStream extends FilterOutputStream {
+
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.cac.restfull.database;
+
+/**
+ * Version de la respuesta de una lectura, para responder las peticiones
+ * condicionales (If-None-Match) sin volver a leer la tabla. Ver
+ * {@link ResultCache#version(String, String)}.
+ *
+ * @author atorres
+ */
+public final class TableVersion {
+
+    private final String entityTag;
+    private final long lastModified;
+
+    TableVersion(String entityTag, long lastModified) {
+        this.entityTag = entityTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return valor del ETag, sin comillas.
+     */
+    public String getEntityTag() {
+        return entityTag;
+    }
+
+    /**
+     * @return fecha en milisegundos de la ultima modificacion conocida de la
+     * tabla.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+}
@@ -7,9 +7,107 @@ package com.cac.restfull.webservice;
  */
 public class AppConstant {
     
-    public static final String DB_CLASS = "oracle.jdbc.driver.OracleDriver";
-    public static final String URL  = "jdbc:oracle:thin:@100.10.20.1:1521:dbprocac";
-    public static final String USER = "ATORRES";
-    public static final String PASS = "CUEVAS001";
+    // Base de datos, se puede apuntar a otra con -Dcac.db.* (las pruebas de
+    // carga usan una base en memoria). Sin driver se usa el del dialecto, que
+    // se detecta por la url si no se indica (oracle o standard).
+    public static final String DB_CLASS = System.getProperty("cac.db.driver", "");
+    public static final String DB_DIALECT = System.getProperty("cac.db.dialect", "");
+    public static final String URL  = System.getProperty("cac.db.url", "jdbc:oracle:thin:@100.10.20.1:1521:dbprocac");
+    public static final String USER = System.getProperty("cac.db.user", "ATORRES");
+    public static final String PASS = System.getProperty("cac.db.password", "CUEVAS001");
+    
+    // Pool de conexiones, se pueden ajustar con -Dcac.pool.* en el servidor.
+    public static final int  POOL_MIN_SIZE = Integer.getInteger("cac.pool.minSize", 2);
+    public static final int  POOL_MAX_SIZE = Integer.getInteger("cac.pool.maxSize", 20);
+    public static final long POOL_BORROW_TIMEOUT_MS = Long.getLong("cac.pool.borrowTimeoutMs", 5000L);
+    public static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("cac.pool.idleTimeoutMs", 600000L);
+    public static final long POOL_MAX_LIFETIME_MS = Long.getLong("cac.pool.maxLifetimeMs", 1800000L);
+    public static final long POOL_EVICTION_INTERVAL_MS = Long.getLong("cac.pool.evictionIntervalMs", 30000L);
+    public static final long POOL_VALIDATION_INTERVAL_MS = Long.getLong("cac.pool.validationIntervalMs", 500L);
+    // Vacio para usar la consulta del dialecto.
+    public static final String POOL_VALIDATION_QUERY = System.getProperty("cac.pool.validationQuery", "");
+    // Statements guardados por cada conexion del pool, 0 para deshabilitar.
+    public static final int  POOL_STATEMENT_CACHE_SIZE = Integer.getInteger("cac.pool.statementCacheSize", 50);
+    
+    // Cantidad de formas de SQL generado que se mantienen en memoria.
+    public static final int SQL_TEMPLATE_CACHE_SIZE = Integer.getInteger("cac.sql.templateCacheSize", 256);
+    
+    // Cache de respuestas de getDataFromTable. Solo se guardan las tablas con
+    // TTL, indicado por tabla como "TABLA:ms,TABLA2:ms" o por defecto.
+    public static final String RESULT_CACHE_TABLE_TTL = System.getProperty("cac.cache.tableTtl", "");
+    public static final long RESULT_CACHE_DEFAULT_TTL_MS = Long.getLong("cac.cache.defaultTtlMs", 0L);
+    public static final long RESULT_CACHE_MAX_BYTES = Long.getLong("cac.cache.maxBytes", 64L * 1024 * 1024);
+    public static final int RESULT_CACHE_MAX_ENTRY_BYTES = Integer.getInteger("cac.cache.maxEntryBytes", 2 * 1024 * 1024);
+    
+    // Lecturas identicas al mismo tiempo: comparten la respuesta de la primera
+    // si no supera maxBytes (0 para no agruparlas); las demas la esperan hasta
+    // waitMs antes de ejecutar su propia consulta.
+    public static final int COALESCE_MAX_BYTES = Integer.getInteger("cac.coalesce.maxBytes", 1024 * 1024);
+    public static final long COALESCE_WAIT_MS = Long.getLong("cac.coalesce.waitMs", 30000L);
+    
+    // Registros por viaje a la base de datos en las lecturas, el cliente puede
+    // indicar otro valor con fetchSize sin superar el maximo.
+    public static final int DB_FETCH_SIZE = Integer.getInteger("cac.db.fetchSize", 500);
+    public static final int DB_MAX_FETCH_SIZE = Integer.getInteger("cac.db.maxFetchSize", 5000);
+    
+    // Lecturas en paralelo: rangos maximos por peticion (una conexion cada
+    // uno) e hilos compartidos para leerlos, que tambien ejecutan las
+    // consultas de getDataFromTables.
+    public static final int DB_MAX_PARALLEL = Integer.getInteger("cac.db.maxParallel", 4);
+    public static final int DB_PARALLEL_THREADS = Integer.getInteger("cac.db.parallelThreads", DB_MAX_PARALLEL);
+    // Espera maxima de un rango para entregar registros a la escritura; al
+    // superarla se cancela la lectura y se liberan las conexiones.
+    public static final long DB_PARALLEL_STALL_MS = Long.getLong("cac.db.parallelStallMs", 60000L);
+    
+    // getDataFromTables: consultas por peticion, consultas ejecutadas a la
+    // vez, tiempo maximo de la peticion (el cliente puede indicar uno menor)
+    // y tamano maximo del resultado de cada consulta, que se lee en memoria.
+    public static final int BATCH_MAX_QUERIES = Integer.getInteger("cac.batch.maxQueries", 20);
+    public static final int BATCH_PARALLEL = Integer.getInteger("cac.batch.parallel", 4);
+    public static final long BATCH_TIMEOUT_MS = Long.getLong("cac.batch.timeoutMs", 10000L);
+    public static final int BATCH_MAX_RESULT_BYTES = Integer.getInteger("cac.batch.maxResultBytes", 4 * 1024 * 1024);
+    
+    // Registros por lote en los insert.
+    public static final int DB_BATCH_SIZE = Integer.getInteger("cac.db.batchSize", 500);
+    // Registros por sentencia dentro de cada lote, 0 para usar el valor del
+    // dialecto (Oracle usa el lote de JDBC, las demas VALUES de varios registros).
+    public static final int DB_ROWS_PER_INSERT = Integer.getInteger("cac.db.rowsPerInsert", 0);
+    
+    // Carga masiva: escritores en paralelo (una conexion cada uno), lotes en
+    // espera y registros rechazados que se detallan en la respuesta.
+    public static final int BULK_WRITERS = Integer.getInteger("cac.bulk.writers", 4);
+    public static final int BULK_QUEUE_SIZE = Integer.getInteger("cac.bulk.queueSize", 8);
+    public static final int BULK_MAX_ERRORS = Integer.getInteger("cac.bulk.maxErrors", 100);
+    
+    // Numeros de orden de trabajo, reservados en bloques de blockSize. Con
+    // secuencia (INCREMENT BY blockSize, admite {empresa} en el nombre) cada
+    // nextval reserva un bloque; sin secuencia se reservan en la tabla de
+    // correlativos, y con hiloTable vacio se continua desde el MAX de la
+    // tabla de ordenes (solo con un servidor).
+    public static final String OT_SEQUENCE = System.getProperty("cac.ot.sequence", "");
+    public static final String OT_HILO_TABLE = System.getProperty("cac.ot.hiloTable", "MAQUINARIAN.MA_CORRELATIVO_ORDEN_TRABAJO");
+    public static final int OT_BLOCK_SIZE = Integer.getInteger("cac.ot.blockSize", 20);
+    
+    // Peticiones atendidas al mismo tiempo contra la base de datos; por
+    // defecto deja libres las conexiones de los escritores de la carga masiva,
+    // las de los hilos de lecturas en paralelo y dos mas para /isOnline. Al
+    // llenarse la cola, o esperar en ella mas de queueTimeoutMs, se responde 503.
+    public static final int EXEC_THREADS = Integer.getInteger("cac.exec.threads",
+            Math.max(POOL_MAX_SIZE - BULK_WRITERS - DB_PARALLEL_THREADS - 2, 1));
+    public static final int EXEC_QUEUE_SIZE = Integer.getInteger("cac.exec.queueSize", 100);
+    public static final long EXEC_QUEUE_TIMEOUT_MS = Long.getLong("cac.exec.queueTimeoutMs", 2000L);
+    public static final int EXEC_RETRY_AFTER_S = Integer.getInteger("cac.exec.retryAfterSeconds", 1);
+    
+    // Respuestas comprimidas con gzip cuando el cliente lo acepta y superan
+    // minBytes; las menores se envian sin comprimir. 0 o menos para desactivar.
+    public static final int HTTP_GZIP_MIN_BYTES = Integer.getInteger("cac.http.gzipMinBytes", 8192);
+    
+    // Log: publicacion en un hilo propio con una cola de queueSize registros,
+    // muestreo del detalle por categoria ("sql:0.01,request:0.1,rows:0.01",
+    // ver ServiceLog) y tamano maximo de los mensajes en bytes.
+    public static final boolean LOG_ASYNC = Boolean.parseBoolean(System.getProperty("cac.log.async", "true"));
+    public static final int LOG_QUEUE_SIZE = Integer.getInteger("cac.log.queueSize", 8192);
+    public static final String LOG_SAMPLE_RATES = System.getProperty("cac.log.sampleRates", "sql:0.01,request:0.01,rows:0.01");
+    public static final int LOG_MAX_PAYLOAD_BYTES = Integer.getInteger("cac.log.maxPayloadBytes", 2048);
     
 }
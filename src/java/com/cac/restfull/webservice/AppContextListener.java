@@ -0,0 +1,30 @@
+package com.cac.restfull.webservice;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import com.cac.restfull.database.DBConnection;
+
+/**
+ * Clase encargada de instalar el log asincrono al iniciar la aplicacion, ver
+ * {@link AsyncLogHandler}, y de liberar los recursos al detenerse, deteniendo
+ * el ejecutor de peticiones y cerrando el pool de conexiones a la base de
+ * datos.
+ *
+ * @author atorres
+ */
+@WebListener
+public class AppContextListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        AsyncLogHandler.install();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        DBExecutor.getInstance().shutdown();
+        DBConnection.shutdown();
+        AsyncLogHandler.uninstall();
+    }
+}
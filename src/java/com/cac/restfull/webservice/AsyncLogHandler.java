@@ -0,0 +1,158 @@
+package com.cac.restfull.webservice;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Handler encargado de publicar los registros de log en un hilo propio, para
+ * que los hilos de las peticiones no esperen por el lock ni la escritura de
+ * los handlers del servidor.
+ *
+ * Los registros se guardan en una cola circular de tamano fijo. Con la cola
+ * llena se descartan los registros menores a SEVERE, y se cuentan; los
+ * SEVERE se publican en el hilo que los genera para no perder errores.
+ *
+ * @author atorres
+ */
+public class AsyncLogHandler extends Handler {
+
+    private static final Logger APP_LOGGER = Logger.getLogger("com.cac.restfull");
+
+    private static volatile AsyncLogHandler installed;
+
+    private final Handler[] targets;
+    private final ArrayBlockingQueue<LogRecord> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    /**
+     * @param targets handlers donde se publican los registros.
+     * @param queueSize registros en espera antes de descartar.
+     */
+    public AsyncLogHandler(Handler[] targets, int queueSize) {
+        this.targets = targets;
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueSize, 1));
+        this.writer = new Thread(this::drain, "cac-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Metodo utilizado para que los loggers de la aplicacion publiquen por
+     * medio del handler asincrono, hacia los handlers del logger raiz.
+     */
+    public static synchronized void install() {
+        if (installed != null || !AppConstant.LOG_ASYNC) {
+            return;
+        }
+        Handler[] targets = Logger.getLogger("").getHandlers();
+        installed = new AsyncLogHandler(targets, AppConstant.LOG_QUEUE_SIZE);
+        APP_LOGGER.addHandler(installed);
+        APP_LOGGER.setUseParentHandlers(false);
+    }
+
+    /**
+     * Metodo utilizado para publicar los registros pendientes y devolver los
+     * loggers de la aplicacion a los handlers del logger raiz.
+     */
+    public static synchronized void uninstall() {
+        if (installed == null) {
+            return;
+        }
+        APP_LOGGER.setUseParentHandlers(true);
+        APP_LOGGER.removeHandler(installed);
+        installed.close();
+        installed = null;
+    }
+
+    /**
+     * @return el handler instalado, o null si el log es sincrono.
+     */
+    public static AsyncLogHandler getInstalled() {
+        return installed;
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed) {
+            publishNow(record);
+            return;
+        }
+        // La clase y el metodo de origen se resuelven en el hilo que genera el
+        // registro; en el hilo de escritura apuntarian a otro lugar.
+        record.getSourceMethodName();
+        if (!queue.offer(record)) {
+            if (record.getLevel().intValue() >= Level.SEVERE.intValue()) {
+                publishNow(record);
+            } else {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    private void publishNow(LogRecord record) {
+        for (Handler target : targets) {
+            target.publish(record);
+        }
+    }
+
+    private void drain() {
+        while (!closed || !queue.isEmpty()) {
+            try {
+                LogRecord record = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    publishNow(record);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                reportError(null, ex, ErrorManager.WRITE_FAILURE);
+            }
+        }
+    }
+
+    /**
+     * @return registros en espera de publicarse.
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * @return registros descartados por tener la cola llena.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void flush() {
+        for (Handler target : targets) {
+            target.flush();
+        }
+    }
+
+    /**
+     * Metodo utilizado para detener el hilo de escritura despues de publicar
+     * los registros pendientes. Los handlers destino no se cierran, son del
+     * servidor.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(5000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,342 @@
+package com.cac.restfull.webservice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Filtro encargado de comprimir con gzip las respuestas JSON, CBOR y de texto
+ * cuando el cliente lo acepta (Accept-Encoding: gzip).
+ *
+ * Los primeros bytes de la respuesta se retienen hasta llegar a
+ * {@link AppConstant#HTTP_GZIP_MIN_BYTES}: las respuestas menores se envian
+ * sin comprimir, ya que la compresion no compensa; las mayores se comprimen
+ * a medida que se escriben, sin retener el resto de la respuesta. Las
+ * descargas de BLOB (application/octet-stream) y las respuestas parciales
+ * (206) no se comprimen. Se registra en el web.xml.
+ *
+ * Con el filtro activo (el cliente acepta gzip) el ETag de la respuesta
+ * termina en "-gzip", se comprima o no, ya que sus bytes pueden no ser los
+ * de la respuesta sin comprimir; asi el ETag de un 304 coincide con el de la
+ * respuesta completa. El sufijo se quita del If-None-Match antes de llegar
+ * al servicio.
+ *
+ * @author atorres
+ */
+public class CompressionFilter implements Filter {
+
+    private static final String ETAG_SUFFIX = "-gzip";
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        String acceptEncoding = ((HttpServletRequest) request).getHeader("Accept-Encoding");
+        if (AppConstant.HTTP_GZIP_MIN_BYTES <= 0 || acceptEncoding == null
+                || !acceptEncoding.toLowerCase().contains("gzip")) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        httpResponse.addHeader("Vary", "Accept-Encoding");
+        GzipResponse wrapper = new GzipResponse(httpResponse, AppConstant.HTTP_GZIP_MIN_BYTES);
+        try {
+            chain.doFilter(new EntityTagRequest((HttpServletRequest) request), wrapper);
+        } finally {
+            wrapper.finish();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * Metodo utilizado para saber si el tipo de contenido vale la pena
+     * comprimirlo.
+     */
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase();
+        return type.startsWith("application/json") || type.startsWith("application/cbor")
+                || type.startsWith("text/");
+    }
+
+    /**
+     * Metodo utilizado para agregar el sufijo de compresion a un ETag.
+     */
+    static String addSuffix(String entityTag) {
+        return entityTag.endsWith("\"")
+                ? entityTag.substring(0, entityTag.length() - 1) + ETAG_SUFFIX + "\""
+                : entityTag + ETAG_SUFFIX;
+    }
+
+    /**
+     * Metodo utilizado para quitar el sufijo de compresion de los ETag de un
+     * encabezado If-None-Match.
+     */
+    static String stripSuffix(String header) {
+        return header == null ? null : header.replace(ETAG_SUFFIX + "\"", "\"");
+    }
+
+    /**
+     * Peticion que entrega el If-None-Match sin el sufijo de compresion.
+     */
+    private static final class EntityTagRequest extends HttpServletRequestWrapper {
+
+        EntityTagRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            String value = super.getHeader(name);
+            return "If-None-Match".equalsIgnoreCase(name) ? stripSuffix(value) : value;
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            Enumeration<String> values = super.getHeaders(name);
+            if (!"If-None-Match".equalsIgnoreCase(name) || values == null) {
+                return values;
+            }
+            List<String> stripped = Collections.list(values);
+            stripped.replaceAll(CompressionFilter::stripSuffix);
+            return Collections.enumeration(stripped);
+        }
+    }
+
+    /**
+     * Respuesta que retiene los primeros bytes para decidir si se comprime.
+     * El Content-Length indicado por la aplicacion solo se envia si la
+     * respuesta no se comprime.
+     */
+    private static final class GzipResponse extends HttpServletResponseWrapper {
+
+        private final HttpServletResponse response;
+        private final int minBytes;
+        private ByteArrayOutputStream buffer;
+        /** Salida definitiva, null mientras se retienen los bytes. */
+        private OutputStream target;
+        private ServletOutputStream stream;
+        private PrintWriter writer;
+        private long contentLength = -1;
+
+        GzipResponse(HttpServletResponse response, int minBytes) {
+            super(response);
+            this.response = response;
+            this.minBytes = minBytes;
+            this.buffer = new ByteArrayOutputStream(Math.min(minBytes, 8192));
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() ya fue llamado.");
+            }
+            if (stream == null) {
+                stream = new ThresholdStream();
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (stream != null) {
+                    throw new IllegalStateException("getOutputStream() ya fue llamado.");
+                }
+                stream = new ThresholdStream();
+                writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            contentLength = len;
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            contentLength = len;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                contentLength = Long.parseLong(value);
+            } else if ("ETag".equalsIgnoreCase(name)) {
+                super.setHeader(name, addSuffix(value));
+            } else if ("Vary".equalsIgnoreCase(name)) {
+                // Se conserva el Vary: Accept-Encoding del filtro.
+                super.addHeader(name, value);
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                contentLength = Long.parseLong(value);
+            } else if ("ETag".equalsIgnoreCase(name)) {
+                super.addHeader(name, addSuffix(value));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (target != null) {
+                target.flush();
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (target != null) {
+                throw new IllegalStateException("La respuesta ya fue enviada.");
+            }
+            buffer.reset();
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            resetBuffer();
+            contentLength = -1;
+            super.reset();
+            response.addHeader("Vary", "Accept-Encoding");
+        }
+
+        /**
+         * Metodo utilizado para elegir la salida definitiva al superar el
+         * limite y enviar los bytes retenidos.
+         */
+        private void open() throws IOException {
+            if (isCompressible(getContentType()) && getStatus() != 206
+                    && !containsHeader("Content-Encoding")) {
+                response.setHeader("Content-Encoding", "gzip");
+                target = new GZIPOutputStream(response.getOutputStream(), 8192);
+            } else {
+                if (contentLength >= 0) {
+                    response.setContentLengthLong(contentLength);
+                }
+                target = response.getOutputStream();
+            }
+            buffer.writeTo(target);
+            buffer = null;
+        }
+
+        /**
+         * Metodo utilizado para terminar la respuesta: las respuestas menores
+         * al limite se envian sin comprimir y las comprimidas se cierran.
+         */
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target == null) {
+                if (buffer.size() > 0) {
+                    response.setContentLength(buffer.size());
+                    OutputStream out = response.getOutputStream();
+                    buffer.writeTo(out);
+                    out.flush();
+                } else if (contentLength >= 0) {
+                    response.setContentLengthLong(contentLength);
+                }
+            } else if (target instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) target).finish();
+                target.flush();
+            } else {
+                target.flush();
+            }
+        }
+
+        private final class ThresholdStream extends ServletOutputStream {
+
+            @Override
+            public void write(int b) throws IOException {
+                if (target == null) {
+                    buffer.write(b);
+                    if (buffer.size() >= minBytes) {
+                        open();
+                    }
+                } else {
+                    target.write(b);
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (target == null) {
+                    buffer.write(b, off, len);
+                    if (buffer.size() >= minBytes) {
+                        open();
+                    }
+                } else {
+                    target.write(b, off, len);
+                }
+            }
+
+            /**
+             * Mientras se retienen los bytes no se envia nada, para poder
+             * decidir si se comprime.
+             */
+            @Override
+            public void flush() throws IOException {
+                if (target != null) {
+                    target.flush();
+                }
+            }
+
+            /**
+             * Las escrituras son bloqueantes, siempre se puede escribir.
+             */
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            /**
+             * Como las escrituras son bloqueantes, se avisa de inmediato que
+             * se puede escribir.
+             */
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                try {
+                    writeListener.onWritePossible();
+                } catch (IOException ex) {
+                    writeListener.onError(ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.cac.restfull.webservice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import com.cac.restfull.database.TableResult;
+
+/**
+ * Ejecutor acotado para el trabajo contra la base de datos.
+ *
+ * Las peticiones se ejecutan en un grupo fijo de hilos con una cola de espera
+ * limitada. Cuando la cola esta llena, o la peticion no logra empezar dentro
+ * del tiempo de espera, se responde de inmediato con 503 y Retry-After en
+ * lugar de acumular peticiones. Una peticion que ya inicio siempre se espera
+ * hasta el final, para no dejar un insert ejecutandose sin respuesta.
+ *
+ * El grupo deja conexiones libres en el pool, de modo que /isOnline, que no
+ * pasa por este ejecutor, sigue respondiendo con el servidor saturado. Las
+ * respuestas que se escriben desde la base de datos (StreamingOutput) siguen
+ * usando su conexion despues de liberar el hilo, hasta que el contenedor
+ * termina de escribirlas; por eso cada peticion toma un permiso, de tantos
+ * como hilos, que se devuelve al terminar la escritura. Con clientes lentos
+ * las peticiones nuevas esperan un permiso, y si no lo obtienen dentro del
+ * tiempo de espera se responde 503. Las respuestas formadas con
+ * {@link #stream(TableResult)} que no usan una conexion al escribirse (ver
+ * {@link TableResult#holdsConnection()}) devuelven el permiso al terminar de
+ * ejecutarse.
+ *
+ * @author atorres
+ */
+public class DBExecutor {
+
+    private static final Logger LOG = Logger.getLogger(DBExecutor.class.getName());
+
+    private static final DBExecutor INSTANCE = new DBExecutor(AppConstant.EXEC_THREADS,
+            AppConstant.EXEC_QUEUE_SIZE, AppConstant.EXEC_QUEUE_TIMEOUT_MS);
+
+    private final ThreadPoolExecutor executor;
+    private final long queueTimeout;
+    /** Peticiones usando una conexion, se ejecuten o se esten escribiendo. */
+    private final Semaphore permits;
+    private final int maxPermits;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    /**
+     * @param threads peticiones ejecutandose al mismo tiempo.
+     * @param queueSize peticiones que pueden esperar un hilo libre.
+     * @param queueTimeout milisegundos que una peticion puede esperar en la
+     * cola antes de descartarse.
+     */
+    public DBExecutor(int threads, int queueSize, long queueTimeout) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(queueSize, 1)), r -> {
+                    Thread t = new Thread(r, "DBExecutor-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.queueTimeout = queueTimeout;
+        this.maxPermits = threads;
+        this.permits = new Semaphore(threads);
+    }
+
+    public static DBExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Metodo utilizado para ejecutar una peticion en el grupo de hilos y
+     * esperar su respuesta.
+     *
+     * @param task trabajo de la peticion, debe manejar sus propios errores.
+     * @return la respuesta del trabajo, o 503 si el servidor esta saturado.
+     */
+    public Response execute(Callable<Response> task) {
+        try {
+            Response response = submit(() -> run(task));
+            return response != null ? response : unavailable("El servidor esta ocupado, intente de nuevo.");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return unavailable("La peticion fue interrumpida.");
+        } catch (ExecutionException ex) {
+            LOG.log(Level.SEVERE, "Ocurrio un error a la hora de resolver la peticion.", ex.getCause());
+            return Response.ok(Util.createJSON("response", false, String.valueOf(ex.getCause().getMessage()))).build();
+        }
+    }
+
+    /**
+     * Metodo utilizado para ejecutar una lectura que no llega como peticion
+     * propia (por ejemplo, la que se repite al escribir otra respuesta), con
+     * las mismas reglas: espera en la cola y toma un permiso que se devuelve
+     * al terminar de escribir el resultado.
+     *
+     * @param read lectura a ejecutar.
+     * @return el resultado, o null si el servidor esta saturado.
+     * @throws Exception el error de la lectura.
+     */
+    public TableResult executeRead(Callable<TableResult> read) throws Exception {
+        try {
+            return submit(() -> runRead(read));
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        }
+    }
+
+    /**
+     * Metodo utilizado para enviar el trabajo al grupo de hilos y esperar su
+     * resultado.
+     *
+     * @return el resultado, o null si la cola esta llena o el trabajo no
+     * empezo dentro del tiempo de espera.
+     */
+    private <T> T submit(Callable<T> task) throws InterruptedException, ExecutionException {
+        AtomicBoolean started = new AtomicBoolean();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> started.compareAndSet(false, true) ? task.call() : null);
+        } catch (RejectedExecutionException ex) {
+            rejected.incrementAndGet();
+            LOG.log(Level.WARNING, "Peticion rechazada, cola llena ({0})", executor.getQueue().size());
+            return null;
+        }
+
+        try {
+            return future.get(queueTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            if (started.compareAndSet(false, true)) {
+                // No llego a ejecutarse, se descarta.
+                future.cancel(false);
+                expired.incrementAndGet();
+                LOG.log(Level.WARNING, "Peticion descartada, espero mas de {0} ms", queueTimeout);
+                return null;
+            }
+            return future.get();
+        }
+    }
+
+    /**
+     * Metodo utilizado para ejecutar el trabajo con un permiso. Si la
+     * respuesta se escribe desde la base de datos, el permiso se devuelve al
+     * terminar la escritura.
+     */
+    private Response run(Callable<Response> task) throws Exception {
+        if (!permits.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS)) {
+            expired.incrementAndGet();
+            LOG.log(Level.WARNING, "Peticion descartada, sin conexiones libres despues de {0} ms", queueTimeout);
+            return unavailable("No hay conexiones disponibles, intente de nuevo.");
+        }
+        boolean release = true;
+        try {
+            Response response = task.call();
+            if (response != null && holdsConnection(response.getEntity())) {
+                release = false;
+                return holdUntilWritten(response);
+            }
+            return response;
+        } finally {
+            if (release) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Metodo utilizado para ejecutar una lectura con un permiso, que se
+     * devuelve al terminar de escribir el resultado o al cerrarlo.
+     */
+    private TableResult runRead(Callable<TableResult> read) throws Exception {
+        if (!permits.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS)) {
+            expired.incrementAndGet();
+            LOG.log(Level.WARNING, "Lectura descartada, sin conexiones libres despues de {0} ms", queueTimeout);
+            return null;
+        }
+        TableResult result;
+        try {
+            result = read.call();
+        } catch (Exception ex) {
+            permits.release();
+            throw ex;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return new TableResult() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                try {
+                    result.write(out);
+                } finally {
+                    release();
+                }
+            }
+
+            @Override
+            public void close() {
+                try {
+                    result.close();
+                } finally {
+                    release();
+                }
+            }
+
+            private void release() {
+                if (released.compareAndSet(false, true)) {
+                    permits.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Metodo utilizado para escribir un resultado de la base de datos en la
+     * respuesta.
+     *
+     * @param result resultado a escribir.
+     * @return la salida de la respuesta; si el resultado no usa una conexion
+     * al escribirse, la peticion no retiene su permiso durante la escritura.
+     */
+    public static StreamingOutput stream(TableResult result) {
+        return new ResultOutput(result);
+    }
+
+    /**
+     * @return true si la respuesta se escribe desde la base de datos despues
+     * de liberar el hilo.
+     */
+    private static boolean holdsConnection(Object entity) {
+        if (entity instanceof ResultOutput) {
+            return ((ResultOutput) entity).result.holdsConnection();
+        }
+        return entity instanceof StreamingOutput;
+    }
+
+    private Response holdUntilWritten(Response response) {
+        StreamingOutput stream = (StreamingOutput) response.getEntity();
+        AtomicBoolean released = new AtomicBoolean();
+        StreamingOutput entity = out -> {
+            try {
+                stream.write(out);
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    permits.release();
+                }
+            }
+        };
+        return Response.fromResponse(response).entity(entity).build();
+    }
+
+    /**
+     * Metodo utilizado para formar la respuesta 503 con Retry-After.
+     */
+    public static Response unavailable(String errorMsj) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", AppConstant.EXEC_RETRY_AFTER_S)
+                .type(MediaType.APPLICATION_JSON)
+                .entity(Util.createJSON("response", false, errorMsj))
+                .build();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getMaxThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * @return peticiones usando una conexion: ejecutandose o escribiendo su
+     * respuesta.
+     */
+    public int getPermitsInUse() {
+        return maxPermits - permits.availablePermits();
+    }
+
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * @return peticiones rechazadas por tener la cola llena.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return peticiones descartadas por esperar demasiado en la cola o por
+     * un permiso.
+     */
+    public long getExpiredCount() {
+        return expired.get();
+    }
+
+    /**
+     * Salida de la respuesta escrita desde un {@link TableResult}.
+     */
+    private static final class ResultOutput implements StreamingOutput {
+
+        private final TableResult result;
+
+        ResultOutput(TableResult result) {
+            this.result = result;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            result.write(out);
+        }
+    }
+}
@@ -1,18 +1,38 @@
 package com.cac.restfull.webservice;
 
+import java.io.InputStream;
 import java.io.StringReader;
+import java.sql.SQLTimeoutException;
+import java.util.Date;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.json.Json;
-import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import com.cac.restfull.database.BlobContent;
+import com.cac.restfull.database.BlobRequest;
 import com.cac.restfull.database.DBServiceManager;
+import com.cac.restfull.database.Metrics;
+import com.cac.restfull.database.ResponseFormat;
+import com.cac.restfull.database.SelectRequest;
+import com.cac.restfull.database.TableResult;
+import com.cac.restfull.database.TableVersion;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 /**
  * Clase encargada de proveeer los servicios manejados por el webservice.
@@ -25,15 +45,19 @@ public class Service {
 
     private static final Logger LOG = Logger.getLogger(Service.class.getName());
 
-    private DBServiceManager dBServiceManager = null;
+    private final DBServiceManager dBServiceManager = DBServiceManager.getInstance();
 
-    public Service() {
-        dBServiceManager = new DBServiceManager();
-    }
+    private final DBExecutor dbExecutor = DBExecutor.getInstance();
+
+    private final Metrics metrics = Metrics.getInstance();
+
+    /** Las respuestas con version se guardan en el cliente, pero se validan en cada consulta. */
+    private static final CacheControl REVALIDATE = CacheControl.valueOf("no-cache");
 
     /**
      * Metodo utilizado para saber si el servicdor se encuentra conectado a la
-     * base de datos.
+     * base de datos. No pasa por el {@link DBExecutor}, para responder aun
+     * con el servidor saturado.
      *
      * @return String true si esta conectado, false en caso contrario.
      */
@@ -41,7 +65,41 @@ public class Service {
     @Path("/isOnline")
     @Produces(MediaType.APPLICATION_JSON)
     public String isOnline() {
-        return Util.createJSON("response", dBServiceManager.isDBConected());
+        long start = System.nanoTime();
+        boolean connected = dBServiceManager.isDBConected();
+        metrics.endpoint("isOnline").record(start, !connected);
+        return Util.createJSON("response", connected);
+    }
+
+    /**
+     * Metodo utilizado para consultar las metricas del servicio: peticiones,
+     * errores y tiempos (p50/p95/p99/max) por endpoint y por tabla, registros
+     * y bytes enviados, espera por conexiones, tiempo de ejecucion de las
+     * sentencias y de codificacion del JSON, y el estado del pool, los caches,
+     * las lecturas agrupadas y el ejecutor, y la cola del log.
+     *
+     * @return Json : {"tag":"response","status":true,"endpoints":{...},
+     * "tables":{...},"timings":{...},"pool":{...},"executor":{...}, ...}
+     */
+    @GET
+    @Path("/metrics")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String metrics() {
+        AsyncLogHandler log = AsyncLogHandler.getInstalled();
+        return metrics.toJson()
+                .add("executor", Json.createObjectBuilder()
+                        .add("active", dbExecutor.getActiveCount())
+                        .add("queued", dbExecutor.getQueueSize())
+                        .add("permitsInUse", dbExecutor.getPermitsInUse())
+                        .add("maxThreads", dbExecutor.getMaxThreads())
+                        .add("completed", dbExecutor.getCompletedCount())
+                        .add("rejected", dbExecutor.getRejectedCount())
+                        .add("expired", dbExecutor.getExpiredCount()))
+                .add("log", Json.createObjectBuilder()
+                        .add("async", log != null)
+                        .add("queued", log == null ? 0 : log.getQueued())
+                        .add("dropped", log == null ? 0 : log.getDropped()))
+                .build().toString();
     }
 
     /**
@@ -52,8 +110,19 @@ public class Service {
      * tabla. segun el formato. {"tableName":"table name", "columns":
      * JsonArray[column1, column2, n...], "where" : "condition1 = ? and
      * condition2 = ? ...", "whereValues" : JsonArray[ParamValue1, ParamValue2,
-     * n...]}
-     * @return Json : Respuesta con los registros obtenidos de la base de datos
+     * n...]}. Opcionalmente "orderBy", "pageSize", "after" y "fetchSize" para
+     * paginar, ver {@link SelectRequest}, y "format" para el formato de la
+     * respuesta, ver {@link ResponseFormat}.
+     * @param accept : encabezado Accept, application/cbor o
+     * application/json;format=compact cuando la peticion no incluye "format".
+     * @param httpRequest : peticion HTTP, para evaluar If-None-Match. Las
+     * tablas con TTL en el cache responden con ETag y Last-Modified, y con 304
+     * sin leer la tabla si el cliente ya tiene la version vigente, ver
+     * {@link TableVersion}. If-Modified-Since no se evalua: Last-Modified
+     * tiene resolucion de segundos y no distingue dos cambios en el mismo
+     * segundo.
+     * @return Json : Respuesta con los registros obtenidos de la base de datos,
+     * escrita fila por fila a medida que se leen del ResultSet.
      *   { "tag"       : "response",
            "status"    : "true",
            "tableName" : "table name",
@@ -61,27 +130,83 @@ public class Service {
      */
     @GET
     @Path("/getDataFromTable")
-    @Produces(MediaType.APPLICATION_JSON)
-    public String getDataFromTable(@QueryParam("select") String select) {
-        try {
+    @Produces({MediaType.APPLICATION_JSON, ResponseFormat.CBOR_TYPE})
+    public Response getDataFromTable(@QueryParam("select") String select,
+            @HeaderParam(HttpHeaders.ACCEPT) String accept, @Context Request httpRequest) {
+        return execute("getDataFromTable", () -> {
             JsonReader reader = Json.createReader(new StringReader(select));
             JsonObject obj = reader.readObject();
-            if (!obj.toString().equals("{}")) {
-                String tableName = obj.getString("tableName");
-                JsonArray columns = obj.getJsonArray("columns");
-                if (obj.containsKey("whereCondition")) {
-                    String whereCondition = obj.getString("whereCondition");
-                    JsonArray whereValues = obj.getJsonArray("whereValues");
-                    return dBServiceManager.getDataFromTable(tableName, columns, whereCondition, whereValues);
+            if (!obj.isEmpty()) {
+                SelectRequest request = SelectRequest.fromJson(obj, ResponseFormat.fromAccept(accept));
+                TableVersion version = dBServiceManager.getTableVersion(request);
+                if (version == null) {
+                    TableResult result = dBServiceManager.getDataFromTable(request);
+                    StreamingOutput stream = DBExecutor.stream(result);
+                    return Response.ok(stream, request.getFormat().getMediaType()).build();
+                }
+
+                EntityTag tag = new EntityTag(version.getEntityTag());
+                Date lastModified = new Date(version.getLastModified());
+                Response.ResponseBuilder notModified = httpRequest.evaluatePreconditions(tag);
+                if (notModified != null) {
+                    dBServiceManager.getResultCache().recordNotModified();
+                    return notModified.tag(tag).cacheControl(REVALIDATE)
+                            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
                 }
-                return dBServiceManager.getDataFromTable(tableName, columns);
+                TableResult result = dBServiceManager.getDataFromTable(request);
+                StreamingOutput stream = DBExecutor.stream(result);
+                return Response.ok(stream, request.getFormat().getMediaType())
+                        .tag(tag).lastModified(lastModified).cacheControl(REVALIDATE)
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
             } else {
-                return Util.createJSON("response", false, "La peticion enviada esta vacia {}.");
+                return Response.ok(Util.createJSON("response", false, "La peticion enviada esta vacia {}."),
+                        MediaType.APPLICATION_JSON).build();
             }
-        } catch (Exception ex) {
-            LOG.log(Level.SEVERE, "Ocurrio un error a la hora de resolver la peticion.", ex);
-            return Util.createJSON("response", false, ex.getMessage());
-        }
+        });
+    }
+
+    /**
+     * Metodo utilizado para resolver varias lecturas de getDataFromTable en
+     * una sola llamada. Las consultas se ejecutan al mismo tiempo y cada
+     * resultado se escribe bajo su id a medida que termina; una consulta con
+     * error o fuera de tiempo responde con su error sin afectar a las demas.
+     *
+     * @param batch : Json con las consultas. {"queries" : JsonArray[{"id" :
+     * "clientes", "tableName" : "table name", "columns" : JsonArray[...],
+     * "whereCondition" : "...", "whereValues" : JsonArray[...]}, n...],
+     * "timeoutMs" : 5000}. Cada consulta admite los campos de getDataFromTable.
+     * @return Json : {"tag" : "response", "status" : true, "results" :
+     * {"clientes" : {"tag" : "response", "status" : true, "tableName" : ...,
+     * "rows" : [...]}, "otra" : {"tag" : "response", "status" : false,
+     * "error" : "mensaje"}}}
+     */
+    @GET
+    @Path("/getDataFromTables")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getDataFromTables(@QueryParam("batch") String batch) {
+        return execute("getDataFromTables", () -> {
+            TableResult result = dBServiceManager.getDataFromTables(readObject(batch));
+            StreamingOutput stream = result::write;
+            return stream;
+        });
+    }
+
+    /**
+     * Metodo utilizado para resolver varias lecturas con las consultas en el
+     * cuerpo de la peticion, con el mismo formato de la version GET.
+     *
+     * @param body : Json con las consultas.
+     */
+    @POST
+    @Path("/getDataFromTables")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getDataFromTablesPost(String body) {
+        return execute("getDataFromTables.post", () -> {
+            TableResult result = dBServiceManager.getDataFromTables(readObject(body));
+            StreamingOutput stream = result::write;
+            return stream;
+        });
     }
 
     /**
@@ -100,31 +225,184 @@ public class Service {
     @GET
     @Path("/insertDataIntoTable")
     @Produces(MediaType.APPLICATION_JSON)
-    public String insertDataIntoTable(@QueryParam("insert") String insert) {
-
-        try {
+    public Response insertDataIntoTable(@QueryParam("insert") String insert) {
+        return execute("insertDataIntoTable", () -> {
             JsonReader reader = Json.createReader(new StringReader(insert));
             JsonObject obj = reader.readObject();
             return dBServiceManager.insertDataIntoTable(obj);
-        } catch (Exception ex) {
-            LOG.log(Level.SEVERE, "Ocurrio un error a la hora de resolver la peticion.", ex);
-            return Util.createJSON("response", false, ex.getMessage());
-        }
+        });
     }
     
+    /**
+     * Metodo utilizado para insertar la informacion enviada en el cuerpo de la
+     * peticion, con el mismo formato de la version GET. Los registros se leen
+     * del cuerpo a medida que llegan, por lo que permite enviar cargas que no
+     * caben en la URL.
+     *
+     * @param body : Json con la informacion a insertar.
+     * @return Json : {"tag" : "response", "status": true||false}
+     */
+    @POST
+    @Path("/insertDataIntoTable")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response insertDataIntoTable(InputStream body) {
+        return execute("insertDataIntoTable.post", () -> dBServiceManager.insertDataIntoTable(body));
+    }
+
+    /**
+     * Metodo utilizado para la carga masiva de registros. El cuerpo contiene
+     * un registro por linea (NDJSON), con el formato
+     * {"tableName":"table name","columns":[...],"values":[...]}.
+     *
+     * @param body : Registros a insertar.
+     * @return Json : {"tag":"response","status":true||false,"received":n,
+     * "inserted":n,"rejected":n,"elapsedMs":ms,"rowsPerSecond":n,
+     * "errors":[{"line":i,"error":"mensaje"}]}
+     */
+    @POST
+    @Path("/bulkInsert")
+    @Consumes({"application/x-ndjson", MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN})
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response bulkInsert(InputStream body) {
+        return execute("bulkInsert", () -> dBServiceManager.bulkInsert(body));
+    }
+
     @GET
     @Path("/insertOrdenTrabajo")
     @Produces(MediaType.APPLICATION_JSON)
-    public String insertOrdenTrabajo(@QueryParam("insert") String insert) {
+    public Response insertOrdenTrabajo(@QueryParam("insert") String insert) {
 
-        LOG.log(Level.INFO,"Request insertOrdenTrabajo : "+insert);
-        try {
+        ServiceLog.log(LOG, Level.INFO, ServiceLog.REQUEST, () -> "Request insertOrdenTrabajo : " + insert);
+        return execute("insertOrdenTrabajo", () -> {
             JsonReader reader = Json.createReader(new StringReader(insert));
             JsonObject obj = reader.readObject();
             return dBServiceManager.insertOrdenTrabajo(obj);
-        } catch (Exception ex) {
-            LOG.log(Level.SEVERE, "Ocurrio un error a la hora de resolver la peticion.", ex);
-            return Util.createJSON("response", false, ex.getMessage());
+        });
+    }
+
+    /**
+     * Metodo utilizado para insertar la orden de trabajo enviada en el cuerpo
+     * de la peticion, con el mismo formato de la version GET.
+     *
+     * @param body : Json con el encabezado, detalle, adjuntos y parametros.
+     * @return Json : {"tag" : "response", "status": true||false}
+     */
+    @POST
+    @Path("/insertOrdenTrabajo")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response insertOrdenTrabajo(InputStream body) {
+        return execute("insertOrdenTrabajo.post", () -> dBServiceManager.insertOrdenTrabajo(body));
+    }
+
+    /**
+     * Metodo utilizado para guardar un archivo en un campo BLOB sin pasar por
+     * JSON. El cuerpo se envia tal cual (application/octet-stream) y se
+     * escribe en la base de datos a medida que se recibe.
+     *
+     * @param blob : Json con el registro a actualizar. Segun el formato:
+     * {"tableName":"table name", "column":"blob column",
+     * "whereCondition":"condition1 = ? and ...", "whereValues":JsonArray[...]}
+     * Con "encoding":"base64" el cuerpo se decodifica mientras se lee; en ese
+     * caso "length" indica el tamano decodificado.
+     * @param contentLength : Tamano del cuerpo.
+     * @param body : Contenido del archivo.
+     * @return Json : {"tag":"response","status":true,"updated":1,"bytes":n}
+     */
+    @POST
+    @Path("/uploadBlob")
+    @Consumes(MediaType.WILDCARD)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response uploadBlob(@QueryParam("blob") String blob,
+            @HeaderParam("Content-Length") String contentLength, InputStream body) {
+        return execute("uploadBlob", () -> {
+            BlobRequest request = BlobRequest.fromJson(readObject(blob));
+            long length = request.isBase64() ? request.getLength()
+                    : contentLength == null ? -1 : Long.parseLong(contentLength.trim());
+            return dBServiceManager.uploadBlob(request, body, length);
+        });
+    }
+
+    /**
+     * Metodo utilizado para descargar un campo BLOB directamente, sin Base64.
+     * Admite el encabezado Range con un rango de bytes (206), para continuar
+     * descargas o leer partes del archivo.
+     *
+     * @param blob : Json con el registro, mismo formato de uploadBlob; puede
+     * incluir "contentType" para el tipo de la respuesta.
+     * @param range : Encabezado Range, por ejemplo bytes=0-1023.
+     * @return El contenido del campo, 404 si el registro no existe o el campo
+     * es nulo, 416 si el rango esta fuera del archivo.
+     */
+    @GET
+    @Path("/downloadBlob")
+    public Response downloadBlob(@QueryParam("blob") String blob, @HeaderParam("Range") String range) {
+        return execute("downloadBlob", () -> {
+            BlobContent content = dBServiceManager.downloadBlob(BlobRequest.fromJson(readObject(blob)), range);
+            if (content == null) {
+                return Response.status(Response.Status.NOT_FOUND).type(MediaType.APPLICATION_JSON)
+                        .entity(Util.createJSON("response", false, "No se encontro el registro o el campo es nulo."))
+                        .build();
+            }
+            if (!content.isSatisfiable()) {
+                content.close();
+                return Response.status(416).header("Content-Range", "bytes */" + content.getTotal()).build();
+            }
+            StreamingOutput stream = content::write;
+            Response.ResponseBuilder response = Response.status(content.isPartial() ? 206 : 200)
+                    .entity(stream)
+                    .type(content.getContentType())
+                    .header("Accept-Ranges", "bytes")
+                    .header("Content-Length", content.getLength());
+            if (content.isPartial()) {
+                response.header("Content-Range", "bytes " + content.getStart() + "-" + content.getEnd()
+                        + "/" + content.getTotal());
+            }
+            return response.build();
+        });
+    }
+
+    private static JsonObject readObject(String json) {
+        JsonReader reader = Json.createReader(new StringReader(json));
+        try {
+            return reader.readObject();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Metodo utilizado para resolver la peticion en el {@link DBExecutor}.
+     * Si el servidor esta saturado, o no hay conexiones libres en el pool, se
+     * responde 503 con Retry-After; el resto de errores se responden con
+     * status false, igual que antes.
+     *
+     * @param endpoint : Nombre con el que se registran las metricas.
+     * @param task : Trabajo de la peticion, devuelve el cuerpo de la respuesta
+     * o la respuesta completa.
+     */
+    private Response execute(String endpoint, Callable<Object> task) {
+        long start = System.nanoTime();
+        Metrics.OperationStats stats = metrics.endpoint(endpoint);
+        Response response = dbExecutor.execute(() -> {
+            try {
+                Object body = task.call();
+                Response ok = body instanceof Response ? (Response) body : Response.ok(body).build();
+                stats.record(start, false);
+                return ok;
+            } catch (SQLTimeoutException ex) {
+                LOG.log(Level.WARNING, "No hay conexiones disponibles.", ex);
+                return DBExecutor.unavailable("No hay conexiones disponibles, intente de nuevo.");
+            } catch (Exception ex) {
+                LOG.log(Level.SEVERE, "Ocurrio un error a la hora de resolver la peticion.", ex);
+                stats.record(start, true);
+                return Response.ok(Util.createJSON("response", false, ex.getMessage()), MediaType.APPLICATION_JSON).build();
+            }
+        });
+        if (response.getStatus() == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()) {
+            stats.record(start, true);
         }
+        return response;
     }
 }
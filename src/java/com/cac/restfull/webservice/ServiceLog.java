@@ -0,0 +1,93 @@
+package com.cac.restfull.webservice;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Log de detalle de las peticiones (SQL, cuerpos recibidos, registros
+ * enviados), que se generan en cada peticion y no deben pesar en ella.
+ *
+ * Cada categoria tiene una tasa de muestreo, indicada como
+ * "categoria:tasa,categoria2:tasa" en cac.log.sampleRates (1 registra todo,
+ * 0.01 uno de cada cien); las categorias no indicadas se registran siempre.
+ * El mensaje se arma solo si el nivel esta habilitado y la peticion sale en
+ * la muestra, y se recorta a {@link AppConstant#LOG_MAX_PAYLOAD_BYTES}.
+ *
+ * @author atorres
+ */
+public final class ServiceLog {
+
+    /** Sentencias SQL ejecutadas. */
+    public static final String SQL = "sql";
+    /** Cuerpo de las peticiones recibidas. */
+    public static final String REQUEST = "request";
+    /** Registros enviados o insertados por peticion. */
+    public static final String ROWS = "rows";
+
+    private static final Map<String, Double> SAMPLE_RATES = parseRates(AppConstant.LOG_SAMPLE_RATES);
+
+    private ServiceLog() {
+    }
+
+    /**
+     * Metodo utilizado para registrar un mensaje de detalle.
+     *
+     * @param category categoria del mensaje, define la tasa de muestreo.
+     * @param message mensaje, se arma solo si se va a registrar.
+     */
+    public static void log(Logger logger, Level level, String category, Supplier<String> message) {
+        if (logger.isLoggable(level) && isSampled(category)) {
+            logger.log(level, truncate(message.get()));
+        }
+    }
+
+    /**
+     * Metodo utilizado para saber si el mensaje sale en la muestra de su
+     * categoria.
+     */
+    static boolean isSampled(String category) {
+        Double rate = SAMPLE_RATES.get(category);
+        return rate == null || rate >= 1.0
+                || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * Metodo utilizado para recortar el mensaje al limite de bytes en UTF-8,
+     * indicando el tamano original.
+     */
+    static String truncate(String message) {
+        int limit = AppConstant.LOG_MAX_PAYLOAD_BYTES;
+        if (message == null || limit <= 0 || message.length() <= limit / 3) {
+            return message;
+        }
+        int bytes = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            int size = c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+            if (bytes + size > limit) {
+                if (Character.isLowSurrogate(c)) {
+                    i--;
+                }
+                return message.substring(0, i) + "... (" + message.length() + " caracteres)";
+            }
+            bytes += size;
+        }
+        return message;
+    }
+
+    private static Map<String, Double> parseRates(String rates) {
+        Map<String, Double> values = new HashMap<>();
+        for (String entry : rates.split(",")) {
+            int separator = entry.lastIndexOf(':');
+            if (separator > 0) {
+                values.put(entry.substring(0, separator).trim(),
+                        Double.valueOf(entry.substring(separator + 1).trim()));
+            }
+        }
+        return values;
+    }
+}
@@ -1,6 +1,8 @@
 package com.cac.restfull.webservice;
 
 import com.sun.xml.wss.impl.misc.Base64;
+import java.io.IOException;
+import java.io.InputStream;
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
@@ -73,4 +75,65 @@ public class Util {
         return Base64.decode(imageDataString);
     }
     
+
+    /**
+     * Metodo utilizado para decodificar Base64 a medida que se lee, sin
+     * cargar el valor completo en memoria. Se ignoran los saltos de linea.
+     */
+    public static InputStream decodeBase64(InputStream base64) {
+        return java.util.Base64.getMimeDecoder().wrap(base64);
+    }
+
+    /**
+     * Metodo utilizado para decodificar un valor Base64 recibido en el JSON.
+     * Los bytes se leen directamente del texto, sin copias intermedias.
+     */
+    public static InputStream decodeBase64(String base64) {
+        return decodeBase64(new AsciiInputStream(base64));
+    }
+
+    /**
+     * @return tamano en bytes del valor Base64 una vez decodificado.
+     */
+    public static int decodedLength(String base64) {
+        long chars = 0;
+        for (int i = 0; i < base64.length(); i++) {
+            char c = base64.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '+' || c == '/') {
+                chars++;
+            }
+        }
+        return (int) (chars * 6 / 8);
+    }
+
+    /**
+     * Lectura de los caracteres de un texto ASCII como bytes.
+     */
+    private static final class AsciiInputStream extends InputStream {
+
+        private final String text;
+        private int position = 0;
+
+        AsciiInputStream(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return position < text.length() ? text.charAt(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= text.length()) {
+                return -1;
+            }
+            int n = Math.min(len, text.length() - position);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) text.charAt(position++);
+            }
+            return n;
+        }
+    }
+    
 }